@@ -0,0 +1,134 @@
+package com.seevis.codereview;
+
+import com.seevis.codereview.model.CodeChange;
+import com.seevis.codereview.model.ReviewIssue;
+import com.seevis.codereview.model.ReviewResult;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic pull requests, Gemini responses and webhook payloads for the benchmarks.
+ */
+public final class SyntheticData {
+    
+    private static final String[] EXTENSIONS = {
+        ".java", ".kt", ".ts", ".py", ".go", ".png", ".min.js", ".yml", ".md", ".lock"
+    };
+    private static final String[] DIRECTORIES = {
+        "src/main/java/com/example/", "web/src/components/", "build/generated/", "node_modules/lib/",
+        "services/api/", "docs/", "src/test/java/com/example/"
+    };
+    
+    private SyntheticData() {
+    }
+    
+    /**
+     * A unified diff of roughly {@code bytes} bytes, made of 20-line hunks.
+     */
+    public static String patch(int bytes) {
+        StringBuilder patch = new StringBuilder(bytes + 256);
+        int line = 1;
+        while (patch.length() < bytes) {
+            patch.append("@@ -").append(line).append(",16 +").append(line).append(",20 @@ public class Example {\n");
+            for (int i = 0; i < 20 && patch.length() < bytes; i++) {
+                char kind = i % 5 == 0 ? '+' : (i % 7 == 0 ? '-' : ' ');
+                patch.append(kind).append("        int value").append(line + i)
+                    .append(" = compute(\"").append(Integer.toHexString(line * 31 + i)).append("\");\n");
+            }
+            line += 40;
+        }
+        return patch.toString();
+    }
+    
+    /**
+     * A PR with {@code files} changed files spread over code, generated, binary and vendored paths.
+     */
+    public static List<CodeChange> pullRequest(int files, int patchBytes) {
+        Random random = new Random(42);
+        String patch = patch(patchBytes);
+        List<CodeChange> changes = new ArrayList<>(files);
+        for (int i = 0; i < files; i++) {
+            String path = DIRECTORIES[random.nextInt(DIRECTORIES.length)]
+                + "File" + i + EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+            changes.add(CodeChange.builder()
+                .fileName(path)
+                .status(i % 10 == 0 ? "added" : "modified")
+                .additions(12)
+                .deletions(4)
+                .changes(16)
+                .patch(patch)
+                .build());
+        }
+        return changes;
+    }
+    
+    /**
+     * Gemini reply text with {@code issues} issues, as returned in JSON mode.
+     */
+    public static String geminiReview(int issues) {
+        StringBuilder json = new StringBuilder("{\n  \"summary\": \"Refactors the example service\",\n")
+            .append("  \"severity\": \"warning\",\n  \"issues\": [\n");
+        for (int i = 0; i < issues; i++) {
+            json.append("    {\"line\": ").append(i + 1)
+                .append(", \"type\": \"bug\", \"severity\": \"warning\", \"message\": \"Possible null dereference of value")
+                .append(i).append("\", \"suggestion\": \"Check value").append(i).append(" for null before use\"}")
+                .append(i + 1 < issues ? ",\n" : "\n");
+        }
+        return json.append("  ],\n  \"positives\": [\"Clear naming\", \"Small methods\"]\n}\n").toString();
+    }
+    
+    public static ReviewResult reviewResult(String fileName, int issues) {
+        List<ReviewIssue> list = new ArrayList<>(issues);
+        for (int i = 0; i < issues; i++) {
+            list.add(ReviewIssue.builder()
+                .line(i + 1)
+                .type(i % 2 == 0 ? "bug" : "performance")
+                .severity(i % 3 == 0 ? "error" : "warning")
+                .message("Possible null dereference of value" + i)
+                .suggestion("Check value" + i + " for null before use")
+                .build());
+        }
+        return ReviewResult.builder()
+            .fileName(fileName)
+            .summary("Refactors the example service")
+            .severity("warning")
+            .issues(list)
+            .positives(List.of("Clear naming"))
+            .build();
+    }
+    
+    /**
+     * A pull_request webhook payload padded to roughly {@code bytes} bytes with a long PR body,
+     * similar to what GitHub sends for PRs with large descriptions.
+     */
+    public static String pullRequestWebhook(int bytes) {
+        StringBuilder body = new StringBuilder();
+        while (body.length() < bytes) {
+            body.append("This change refactors the review pipeline and adds caching. ");
+        }
+        return "{\"action\":\"synchronize\",\"number\":42,"
+            + "\"pull_request\":{\"number\":42,\"draft\":false,\"changed_files\":12,\"additions\":340,\"deletions\":120,"
+            + "\"title\":\"Improve review throughput\",\"body\":\"" + body + "\","
+            + "\"user\":{\"login\":\"octocat\",\"id\":1},"
+            + "\"head\":{\"ref\":\"feature\",\"sha\":\"6dcb09b5b57875f334f61aebed695e2e4193db5e\"},"
+            + "\"base\":{\"ref\":\"main\",\"sha\":\"9049f1265b7d61be4a8904a9a27120d2064dab3b\"}},"
+            + "\"repository\":{\"id\":1296269,\"full_name\":\"octocat/Hello-World\",\"private\":false},"
+            + "\"installation\":{\"id\":123456}}";
+    }
+    
+    /**
+     * Sets a private field, for {@code @Value}-injected settings when no Spring context is running.
+     */
+    public static void setField(Object target, String name, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot set " + name, e);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.seevis.codereview.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.seevis.codereview.SyntheticData;
+import com.seevis.codereview.model.WebhookEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming extraction with the previous full {@code readTree}; run with
+ * {@code -prof gc} to compare {@code gc.alloc.rate.norm} (bytes allocated per event).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebhookEventParserBenchmark {
+    
+    @Param({"2048", "65536", "1048576"})
+    public int payloadBytes;
+    
+    private ObjectMapper objectMapper;
+    private WebhookEventParser parser;
+    private byte[] payload;
+    
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        parser = new WebhookEventParser(objectMapper);
+        payload = SyntheticData.pullRequestWebhook(payloadBytes).getBytes(StandardCharsets.UTF_8);
+    }
+    
+    @Benchmark
+    public WebhookEvent streaming() throws IOException {
+        return parser.parse(payload);
+    }
+    
+    @Benchmark
+    public WebhookEvent readTree() throws IOException {
+        JsonNode root = objectMapper.readTree(new String(payload, StandardCharsets.UTF_8));
+        JsonNode pullRequest = root.path("pull_request");
+        return WebhookEvent.builder()
+            .action(root.path("action").asText())
+            .prNumber(pullRequest.path("number").asInt())
+            .draft(pullRequest.path("draft").asBoolean())
+            .repository(root.path("repository").path("full_name").asText())
+            .installationId(root.path("installation").path("id").asText())
+            .headSha(pullRequest.path("head").path("sha").asText(null))
+            .changedFiles(pullRequest.path("changed_files").asInt(0))
+            .build();
+    }
+}
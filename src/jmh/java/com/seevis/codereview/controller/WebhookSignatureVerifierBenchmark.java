@@ -0,0 +1,54 @@
+package com.seevis.codereview.controller;
+
+import com.seevis.codereview.SyntheticData;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebhookSignatureVerifierBenchmark {
+    
+    private static final String SECRET = "benchmark-webhook-secret";
+    
+    @Param({"2048", "65536", "1048576"})
+    public int payloadBytes;
+    
+    private WebhookSignatureVerifier verifier;
+    private byte[] payload;
+    private String signature;
+    
+    @Setup
+    public void setUp() throws Exception {
+        verifier = new WebhookSignatureVerifier();
+        SyntheticData.setField(verifier, "webhookSecret", SECRET);
+        verifier.initialize();
+        
+        payload = SyntheticData.pullRequestWebhook(payloadBytes).getBytes(StandardCharsets.UTF_8);
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        signature = "sha256=" + HexFormat.of().formatHex(mac.doFinal(payload));
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public boolean verify() {
+        return verifier.verify(payload, signature);
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public boolean verifyStream() throws IOException {
+        return verifier.verify(new ByteArrayInputStream(payload), signature);
+    }
+}
@@ -0,0 +1,63 @@
+package com.seevis.codereview.service;
+
+import com.seevis.codereview.SyntheticData;
+import com.seevis.codereview.model.CodeChange;
+import com.seevis.codereview.model.ReviewResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AIReviewServiceBenchmark {
+    
+    @State(Scope.Benchmark)
+    public static class ParseState {
+        
+        @Param({"0", "10", "200"})
+        public int issues;
+        
+        AIReviewService service;
+        CodeChange change;
+        String response;
+        
+        @Setup
+        public void setUp() {
+            service = new AIReviewService();
+            service.initialize();
+            change = CodeChange.builder().fileName("src/main/java/Example.java").build();
+            response = SyntheticData.geminiReview(issues);
+        }
+    }
+    
+    @State(Scope.Benchmark)
+    public static class PromptState {
+        
+        @Param({"1024", "65536", "4194304"})
+        public int patchBytes;
+        
+        AIReviewService service;
+        PromptPacker.Part part;
+        
+        @Setup
+        public void setUp() {
+            service = new AIReviewService();
+            service.initialize();
+            CodeChange change = SyntheticData.pullRequest(1, patchBytes).get(0);
+            part = new PromptPacker.Part(0, change, change.getPatch(), 1, 1);
+        }
+    }
+    
+    @Benchmark
+    public ReviewResult parseReviewResult(ParseState state) {
+        return state.service.parseReviewResult(state.response, state.change);
+    }
+    
+    @Benchmark
+    public String buildReviewPrompt(PromptState state) {
+        return state.service.buildReviewPrompt(state.part);
+    }
+}
@@ -0,0 +1,62 @@
+package com.seevis.codereview.service;
+
+import com.seevis.codereview.SyntheticData;
+import com.seevis.codereview.model.CodeChange;
+import com.seevis.codereview.model.ReviewComment;
+import com.seevis.codereview.model.ReviewResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodeReviewOrchestratorBenchmark {
+    
+    @Param({"1", "100", "1000", "5000"})
+    public int files;
+    
+    private CodeReviewOrchestrator orchestrator;
+    private List<CodeChange> changes;
+    private List<ReviewResult> results;
+    
+    @Setup
+    public void setUp() {
+        FileFilter fileFilter = new FileFilter();
+        SyntheticData.setField(fileFilter, "reviewMetrics", new ReviewMetrics(new SimpleMeterRegistry()));
+        SyntheticData.setField(fileFilter, "include", "*.java,*.kt,*.js,*.ts,*.py,*.go,*.xml,*.yml,*.yaml,*.properties");
+        SyntheticData.setField(fileFilter, "exclude", "**/test/**,**/generated/**,**/build/**,**/node_modules/**,*.min.*,package-lock.json");
+        SyntheticData.setField(fileFilter, "maxFileSizeKb", 500);
+        fileFilter.initialize();
+        orchestrator = new CodeReviewOrchestrator(null, null, null, null, fileFilter);
+        // No file cap, so every path is classified
+        SyntheticData.setField(orchestrator, "maxFilesToReview", Integer.MAX_VALUE);
+        SyntheticData.setField(orchestrator, "maxCommentsPerReview", 20);
+        
+        changes = SyntheticData.pullRequest(files, 2048);
+        results = new ArrayList<>(files);
+        for (CodeChange change : changes) {
+            results.add(SyntheticData.reviewResult(change.getFileName(), 3));
+        }
+    }
+    
+    @Benchmark
+    public List<CodeChange> filterFilesForReview() {
+        return orchestrator.filterFilesForReview(changes, GitAttributes.none(), null);
+    }
+    
+    @Benchmark
+    public void convertToGitHubComments(Blackhole blackhole) {
+        for (int i = 0; i < changes.size(); i++) {
+            List<ReviewComment> comments = orchestrator.convertToGitHubComments(results.get(i), changes.get(i));
+            blackhole.consume(comments);
+        }
+    }
+}
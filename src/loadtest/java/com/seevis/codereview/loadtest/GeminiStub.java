@@ -0,0 +1,180 @@
+package com.seevis.codereview.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in for the Gemini {@code generateContent} and {@code streamGenerateContent} endpoints
+ * used by {@code AIReviewService}. Single-file prompts get one review; multi-file prompts get a
+ * {@code files} array with an entry for every {@code ### File n: name} heading in the prompt.
+ * Context uploaded through {@code cachedContents} is remembered and counted as cached tokens
+ * when a request refers to it. Throttled requests get a 429 with both {@code Retry-After} and a
+ * {@code RetryInfo} detail, like the real API.
+ */
+public class GeminiStub extends StubServer {
+    
+    private static final Pattern GENERATE = Pattern.compile("/v1beta/models/([^/:]+):(generateContent|streamGenerateContent)");
+    private static final Pattern BATCH_FILE = Pattern.compile("^### File \\d+: (.+)$", Pattern.MULTILINE);
+    // Streamed replies are cut into this many SSE events
+    private static final int STREAM_CHUNKS = 4;
+    
+    // Cached content name -> estimated tokens
+    private final Map<String, Integer> cachedContents = new ConcurrentHashMap<>();
+    private final AtomicInteger cachedContentIds = new AtomicInteger();
+    
+    public GeminiStub(int port, StubBehavior behavior) {
+        super("Gemini", port, behavior);
+    }
+    
+    @Override
+    protected void handle(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestURI().getPath().equals("/v1beta/cachedContents")) {
+            createCachedContent(exchange);
+            return;
+        }
+        Matcher matcher = GENERATE.matcher(exchange.getRequestURI().getPath());
+        if (!matcher.matches() || !exchange.getRequestMethod().equals("POST")) {
+            sendJson(exchange, 404, error(404, "NOT_FOUND", "Method not found."));
+            return;
+        }
+        
+        JsonNode request = JSON.readTree(readBody(exchange));
+        String prompt = request.path("contents").path(0).path("parts").path(0).path("text").asText("");
+        String reply = JSON.writeValueAsString(review(prompt));
+        int promptTokens = prompt.length() / 4
+            + request.path("systemInstruction").path("parts").path(0).path("text").asText("").length() / 4;
+        int replyTokens = reply.length() / 4;
+        int cachedTokens = 0;
+        if (request.hasNonNull("cachedContent")) {
+            Integer cached = cachedContents.get(request.get("cachedContent").asText());
+            if (cached == null) {
+                sendJson(exchange, 404, error(404, "NOT_FOUND", "CachedContent not found (or permission denied)"));
+                return;
+            }
+            cachedTokens = cached;
+            promptTokens += cached;
+        }
+        
+        if (matcher.group(2).equals("generateContent")) {
+            sendJson(exchange, 200, response(reply, true, promptTokens, replyTokens, cachedTokens));
+        } else {
+            stream(exchange, reply, promptTokens, replyTokens, cachedTokens);
+        }
+    }
+    
+    private void createCachedContent(HttpExchange exchange) throws IOException {
+        JsonNode request = JSON.readTree(readBody(exchange));
+        String text = request.path("systemInstruction").path("parts").path(0).path("text").asText("");
+        String name = "cachedContents/stub-" + cachedContentIds.incrementAndGet();
+        cachedContents.put(name, text.length() / 4);
+        ObjectNode body = JSON.createObjectNode();
+        body.put("name", name);
+        body.put("model", request.path("model").asText());
+        body.putObject("usageMetadata").put("totalTokenCount", text.length() / 4);
+        sendJson(exchange, 200, body);
+    }
+    
+    @Override
+    protected void fail(HttpExchange exchange, int status) throws IOException {
+        if (status == 429) {
+            int retryAfter = behavior().retryAfterSeconds();
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfter));
+            ObjectNode body = error(429, "RESOURCE_EXHAUSTED", "Resource has been exhausted (e.g. check quota).");
+            ((ObjectNode) body.path("error")).putArray("details").addObject()
+                .put("@type", "type.googleapis.com/google.rpc.RetryInfo")
+                .put("retryDelay", retryAfter + "s");
+            sendJson(exchange, 429, body);
+        } else {
+            sendJson(exchange, status, error(status, "INTERNAL", "An internal error has occurred."));
+        }
+    }
+    
+    private void stream(HttpExchange exchange, String reply, int promptTokens, int replyTokens,
+                        int cachedTokens) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        int chunkSize = Math.max(1, (reply.length() + STREAM_CHUNKS - 1) / STREAM_CHUNKS);
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int start = 0; start < reply.length(); start += chunkSize) {
+                boolean last = start + chunkSize >= reply.length();
+                String text = reply.substring(start, Math.min(reply.length(), start + chunkSize));
+                String event = "data: " + JSON.writeValueAsString(response(text, last, promptTokens, replyTokens, cachedTokens)) + "\r\n\r\n";
+                out.write(event.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        }
+    }
+    
+    private ObjectNode review(String prompt) {
+        List<String> batchFiles = new ArrayList<>();
+        Matcher matcher = BATCH_FILE.matcher(prompt);
+        while (matcher.find()) {
+            batchFiles.add(matcher.group(1).trim());
+        }
+        if (batchFiles.isEmpty()) {
+            return fileReview(null);
+        }
+        ObjectNode batch = JSON.createObjectNode();
+        ArrayNode files = batch.putArray("files");
+        for (String fileName : batchFiles) {
+            files.add(fileReview(fileName));
+        }
+        return batch;
+    }
+    
+    private ObjectNode fileReview(String fileName) {
+        ObjectNode review = JSON.createObjectNode();
+        if (fileName != null) {
+            review.put("fileName", fileName);
+        }
+        review.put("summary", "Adds constant fields.");
+        review.put("severity", "warning");
+        ObjectNode issue = review.putArray("issues").addObject();
+        issue.put("line", 2);
+        issue.put("severity", "warning");
+        issue.put("type", "style");
+        issue.put("message", "Magic number assigned to a field.");
+        issue.put("suggestion", "Extract the value into a named constant.");
+        review.putArray("positives").add("Small, focused change.");
+        return review;
+    }
+    
+    private ObjectNode response(String text, boolean finished, int promptTokens, int replyTokens, int cachedTokens) {
+        ObjectNode response = JSON.createObjectNode();
+        ObjectNode candidate = response.putArray("candidates").addObject();
+        ObjectNode content = candidate.putObject("content");
+        content.put("role", "model");
+        content.putArray("parts").addObject().put("text", text);
+        if (finished) {
+            candidate.put("finishReason", "STOP");
+            response.putObject("usageMetadata")
+                .put("promptTokenCount", promptTokens)
+                .put("candidatesTokenCount", replyTokens)
+                .put("cachedContentTokenCount", cachedTokens)
+                .put("totalTokenCount", promptTokens + replyTokens);
+        }
+        return response;
+    }
+    
+    private static ObjectNode error(int code, String status, String message) {
+        ObjectNode body = JSON.createObjectNode();
+        body.putObject("error")
+            .put("code", code)
+            .put("message", message)
+            .put("status", status);
+        return body;
+    }
+}
@@ -0,0 +1,341 @@
+package com.seevis.codereview.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in for the GitHub REST endpoints used by {@code WebhookService} and {@code GitHubService}:
+ * repository and pull request lookups, changed files, compare, the root {@code .gitattributes},
+ * issue comments, labels and PR reviews. Every pull request exists; its files are generated from the PR number, so the same PR
+ * always has the same diff. Responses carry {@code X-RateLimit-*} headers counting down a quota.
+ * <p>
+ * Throttled requests are answered the way GitHub answers a secondary rate limit (403 with
+ * {@code Retry-After}), which is what the github-api client waits on.
+ */
+public class GitHubStub extends StubServer {
+    
+    private static final Pattern REPO = Pattern.compile("/repos/([^/]+)/([^/]+)");
+    private static final Pattern PULL = Pattern.compile("/repos/([^/]+)/([^/]+)/pulls/(\\d+)(/files|/reviews)?");
+    private static final Pattern ISSUE = Pattern.compile("/repos/([^/]+)/([^/]+)/issues/(\\d+)/(comments|labels)(?:/(.+))?");
+    private static final Pattern COMPARE = Pattern.compile("/repos/([^/]+)/([^/]+)/compare/(.+)");
+    private static final Pattern CONTENTS = Pattern.compile("/repos/([^/]+)/([^/]+)/contents/\\.gitattributes");
+    private static final String GIT_ATTRIBUTES = "*.pb.go linguist-generated\n*.png binary\n";
+    
+    /**
+     * Told when a review is posted for a PR: the summary comment, the failure comment or a PR review.
+     */
+    @FunctionalInterface
+    public interface ReviewListener {
+        void reviewPosted(int prNumber, boolean failed);
+    }
+    
+    private final int filesPerPr;
+    private final int linesPerFile;
+    private final int rateLimit;
+    private final ReviewListener listener;
+    private final AtomicInteger remaining;
+    private final AtomicInteger commentIds = new AtomicInteger();
+    private volatile long resetEpochSeconds;
+    
+    public GitHubStub(int port, StubBehavior behavior, int filesPerPr, int linesPerFile, int rateLimit,
+                      ReviewListener listener) {
+        super("GitHub", port, behavior);
+        this.filesPerPr = filesPerPr;
+        this.linesPerFile = linesPerFile;
+        this.rateLimit = rateLimit;
+        this.listener = listener;
+        this.remaining = new AtomicInteger(rateLimit);
+        this.resetEpochSeconds = System.currentTimeMillis() / 1000 + 3600;
+    }
+    
+    /**
+     * The head commit every stubbed PR reports; webhook payloads should carry the same SHA.
+     */
+    public static String headSha(int prNumber) {
+        return String.format("%040x", prNumber);
+    }
+    
+    // Inverse of headSha for "base...head" compare ranges
+    private static int prNumberOf(String range) {
+        String head = range.substring(range.lastIndexOf('.') + 1);
+        try {
+            return (int) Long.parseLong(head, 16);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+    
+    @Override
+    protected boolean isExempt(HttpExchange exchange) {
+        // Connectivity check and rate limit lookups at startup
+        String path = exchange.getRequestURI().getPath();
+        return path.equals("/") || path.equals("/rate_limit");
+    }
+    
+    @Override
+    protected void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        addRateLimitHeaders(exchange);
+        
+        if (path.equals("/")) {
+            ObjectNode root = JSON.createObjectNode();
+            root.put("current_user_url", baseUrl() + "/user");
+            root.put("rate_limit_url", baseUrl() + "/rate_limit");
+            sendJson(exchange, 200, root);
+            return;
+        }
+        if (path.equals("/rate_limit")) {
+            ObjectNode core = JSON.createObjectNode()
+                .put("limit", rateLimit)
+                .put("remaining", remaining.get())
+                .put("reset", resetEpochSeconds)
+                .put("used", rateLimit - remaining.get());
+            ObjectNode root = JSON.createObjectNode();
+            ObjectNode resources = root.putObject("resources");
+            resources.set("core", core);
+            // github-api requires every resource GitHub reports, not only core
+            for (String resource : new String[] {"search", "graphql", "integration_manifest"}) {
+                resources.putObject(resource)
+                    .put("limit", 5000)
+                    .put("remaining", 5000)
+                    .put("reset", resetEpochSeconds)
+                    .put("used", 0);
+            }
+            root.set("rate", core);
+            sendJson(exchange, 200, root);
+            return;
+        }
+        
+        Matcher matcher = ISSUE.matcher(path);
+        if (matcher.matches()) {
+            handleIssue(exchange, method, matcher);
+            return;
+        }
+        matcher = PULL.matcher(path);
+        if (matcher.matches()) {
+            handlePull(exchange, method, matcher);
+            return;
+        }
+        matcher = COMPARE.matcher(path);
+        if (matcher.matches() && method.equals("GET")) {
+            ObjectNode compare = JSON.createObjectNode();
+            compare.put("url", baseUrl() + path);
+            compare.put("status", "ahead");
+            compare.put("ahead_by", 1);
+            compare.put("behind_by", 0);
+            compare.put("total_commits", 1);
+            // The compared range is treated as touching every file of the PR whose head it ends at
+            compare.set("files", files(prNumberOf(matcher.group(3))));
+            sendJson(exchange, 200, compare);
+            return;
+        }
+        matcher = CONTENTS.matcher(path);
+        if (matcher.matches() && method.equals("GET")) {
+            ObjectNode content = JSON.createObjectNode();
+            content.put("type", "file");
+            content.put("encoding", "base64");
+            content.put("name", ".gitattributes");
+            content.put("path", ".gitattributes");
+            content.put("size", GIT_ATTRIBUTES.length());
+            content.put("sha", String.format("%040x", GIT_ATTRIBUTES.hashCode() & 0xffffffffL));
+            content.put("url", baseUrl() + path);
+            content.put("content", Base64.getEncoder().encodeToString(GIT_ATTRIBUTES.getBytes(StandardCharsets.UTF_8)));
+            sendJson(exchange, 200, content);
+            return;
+        }
+        matcher = REPO.matcher(path);
+        if (matcher.matches() && method.equals("GET")) {
+            sendJson(exchange, 200, repository(matcher.group(1), matcher.group(2)));
+            return;
+        }
+        sendJson(exchange, 404, JSON.createObjectNode().put("message", "Not Found"));
+    }
+    
+    @Override
+    protected void fail(HttpExchange exchange, int status) throws IOException {
+        addRateLimitHeaders(exchange);
+        if (status == 429) {
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(behavior().retryAfterSeconds()));
+            sendJson(exchange, 403, JSON.createObjectNode()
+                .put("message", "You have exceeded a secondary rate limit. Please wait a few minutes before you try again."));
+        } else {
+            sendJson(exchange, status, JSON.createObjectNode().put("message", "Server Error"));
+        }
+    }
+    
+    private void handlePull(HttpExchange exchange, String method, Matcher matcher) throws IOException {
+        String owner = matcher.group(1);
+        String repo = matcher.group(2);
+        int number = Integer.parseInt(matcher.group(3));
+        String sub = matcher.group(4);
+        
+        if (sub == null && method.equals("GET")) {
+            sendJson(exchange, 200, pullRequest(owner, repo, number));
+        } else if ("/files".equals(sub) && method.equals("GET")) {
+            // Paged like GitHub: per_page/page query parameters and a Link header to the next page
+            String query = exchange.getRequestURI().getQuery();
+            int perPage = Math.max(1, queryInt(query, "per_page", 30));
+            int page = Math.max(1, queryInt(query, "page", 1));
+            int from = Math.min(filesPerPr, (page - 1) * perPage);
+            int to = Math.min(filesPerPr, from + perPage);
+            if (to < filesPerPr) {
+                exchange.getResponseHeaders().set("Link", "<" + baseUrl() + exchange.getRequestURI().getPath()
+                    + "?per_page=" + perPage + "&page=" + (page + 1) + ">; rel=\"next\"");
+            }
+            sendJson(exchange, 200, files(number, from, to));
+        } else if ("/reviews".equals(sub) && method.equals("POST")) {
+            readBody(exchange);
+            ObjectNode review = JSON.createObjectNode();
+            review.put("id", commentIds.incrementAndGet());
+            review.put("state", "COMMENTED");
+            review.put("html_url", "https://github.com/" + owner + "/" + repo + "/pull/" + number);
+            review.putObject("user").put("login", "code-reviewer[bot]").put("id", 1);
+            sendJson(exchange, 200, review);
+            listener.reviewPosted(number, false);
+        } else {
+            sendJson(exchange, 404, JSON.createObjectNode().put("message", "Not Found"));
+        }
+    }
+    
+    private void handleIssue(HttpExchange exchange, String method, Matcher matcher) throws IOException {
+        int number = Integer.parseInt(matcher.group(3));
+        String sub = matcher.group(4);
+        
+        if (sub.equals("comments") && method.equals("POST")) {
+            String body = JSON.readTree(readBody(exchange)).path("body").asText("");
+            ObjectNode comment = JSON.createObjectNode();
+            comment.put("id", commentIds.incrementAndGet());
+            comment.put("body", body);
+            comment.putObject("user").put("login", "code-reviewer[bot]").put("id", 1);
+            sendJson(exchange, 201, comment);
+            // The summary or failure comment is the last call of a review
+            if (body.contains("Code Review Complete")) {
+                listener.reviewPosted(number, false);
+            } else if (body.contains("Code Review Failed")) {
+                listener.reviewPosted(number, true);
+            }
+        } else if (sub.equals("labels") && method.equals("POST")) {
+            ArrayNode labels = JSON.createArrayNode();
+            for (JsonNode name : JSON.readTree(readBody(exchange)).path("labels")) {
+                labels.addObject().put("name", name.asText()).put("color", "ededed");
+            }
+            sendJson(exchange, 200, labels);
+        } else if (sub.equals("labels") && method.equals("DELETE") && matcher.group(5) != null) {
+            sendJson(exchange, 200, JSON.createArrayNode());
+        } else {
+            sendJson(exchange, 404, JSON.createObjectNode().put("message", "Not Found"));
+        }
+    }
+    
+    private void addRateLimitHeaders(HttpExchange exchange) {
+        long now = System.currentTimeMillis() / 1000;
+        if (now >= resetEpochSeconds) {
+            resetEpochSeconds = now + 3600;
+            remaining.set(rateLimit);
+        }
+        int left = Math.max(0, remaining.decrementAndGet());
+        exchange.getResponseHeaders().set("X-RateLimit-Limit", String.valueOf(rateLimit));
+        exchange.getResponseHeaders().set("X-RateLimit-Remaining", String.valueOf(left));
+        exchange.getResponseHeaders().set("X-RateLimit-Used", String.valueOf(rateLimit - left));
+        exchange.getResponseHeaders().set("X-RateLimit-Reset", String.valueOf(resetEpochSeconds));
+        exchange.getResponseHeaders().set("X-RateLimit-Resource", "core");
+    }
+    
+    private ObjectNode repository(String owner, String name) {
+        ObjectNode repo = JSON.createObjectNode();
+        repo.put("id", Math.abs((owner + "/" + name).hashCode()));
+        repo.put("name", name);
+        repo.put("full_name", owner + "/" + name);
+        repo.put("private", false);
+        repo.put("default_branch", "main");
+        repo.put("url", baseUrl() + "/repos/" + owner + "/" + name);
+        repo.put("html_url", "https://github.com/" + owner + "/" + name);
+        repo.putObject("owner").put("login", owner).put("id", 1).put("type", "Organization");
+        return repo;
+    }
+    
+    private ObjectNode pullRequest(String owner, String repo, int number) {
+        String apiRepo = baseUrl() + "/repos/" + owner + "/" + repo;
+        ObjectNode pr = JSON.createObjectNode();
+        pr.put("id", number);
+        pr.put("number", number);
+        pr.put("state", "open");
+        pr.put("title", "Load test PR #" + number);
+        pr.put("body", "Generated by the load test GitHub stub");
+        pr.put("draft", false);
+        pr.put("url", apiRepo + "/pulls/" + number);
+        pr.put("issue_url", apiRepo + "/issues/" + number);
+        pr.put("html_url", "https://github.com/" + owner + "/" + repo + "/pull/" + number);
+        pr.put("changed_files", filesPerPr);
+        pr.putObject("user").put("login", "load-tester").put("id", 2);
+        ObjectNode head = pr.putObject("head");
+        head.put("ref", "feature/load-" + number);
+        head.put("sha", headSha(number));
+        head.put("label", owner + ":feature/load-" + number);
+        ObjectNode base = pr.putObject("base");
+        base.put("ref", "main");
+        base.put("sha", headSha(0));
+        base.put("label", owner + ":main");
+        return pr;
+    }
+    
+    private static int queryInt(String query, String name, int defaultValue) {
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith(name + "=")) {
+                    try {
+                        return Integer.parseInt(parameter.substring(name.length() + 1));
+                    } catch (NumberFormatException e) {
+                        return defaultValue;
+                    }
+                }
+            }
+        }
+        return defaultValue;
+    }
+    
+    private ArrayNode files(int number) {
+        return files(number, 0, filesPerPr);
+    }
+    
+    private ArrayNode files(int number, int from, int to) {
+        ArrayNode files = JSON.createArrayNode();
+        for (int i = from; i < to; i++) {
+            String fileName = String.format("src/main/java/com/example/pr%d/Service%d.java", number, i);
+            ObjectNode file = files.addObject();
+            file.put("sha", String.format("%040x", (long) number * 1000 + i));
+            file.put("filename", fileName);
+            file.put("status", "modified");
+            file.put("additions", linesPerFile);
+            file.put("deletions", 0);
+            file.put("changes", linesPerFile);
+            file.put("patch", patch(number, i));
+            file.put("blob_url", "https://github.com/blob/" + headSha(number) + "/" + fileName);
+            file.put("raw_url", "https://github.com/raw/" + headSha(number) + "/" + fileName);
+            file.put("contents_url", baseUrl() + "/contents/" + fileName);
+        }
+        return files;
+    }
+    
+    private String patch(int number, int file) {
+        StringBuilder patch = new StringBuilder();
+        patch.append("@@ -1,2 +1,").append(linesPerFile + 2).append(" @@\n");
+        patch.append(" public class Service").append(file).append(" {\n");
+        for (int line = 0; line < linesPerFile; line++) {
+            patch.append("+    private int value").append(line).append(" = ")
+                .append(number * 31 + line).append(";\n");
+        }
+        patch.append(" }");
+        return patch.toString();
+    }
+}
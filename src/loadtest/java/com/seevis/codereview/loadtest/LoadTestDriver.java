@@ -0,0 +1,276 @@
+package com.seevis.codereview.loadtest;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.seevis.codereview.GitHubCodeReviewerWebApplication;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end load test: starts the {@link GitHubStub} and {@link GeminiStub}, boots the web
+ * application against them and POSTs {@code pull_request} webhooks to {@code /webhook/github} at
+ * a fixed rate. A review counts as done when its summary (or failure) comment reaches the GitHub
+ * stub; latency is measured from sending the webhook to that moment.
+ * <p>
+ * Options are {@code --name=value}: {@code rps}, {@code duration-seconds}, {@code drain-seconds},
+ * {@code files-per-pr}, {@code lines-per-file}, {@code webhook-secret} and, per stub
+ * ({@code github-} / {@code gemini-} prefix), {@code latency-ms}, {@code jitter-ms},
+ * {@code error-rate}, {@code throttle-rate} and {@code retry-after-seconds}. Any other argument
+ * is passed to the application, e.g. {@code --review.scheduler.workers=8}. With
+ * {@code --target=http://host:port} no application is started; the target must then be
+ * configured with {@code github.api-url} and {@code gemini.base-url} pointing at the stubs
+ * ({@code --github-port} / {@code --gemini-port} fix their ports).
+ */
+@Slf4j
+public class LoadTestDriver {
+    
+    private final Map<String, String> options;
+    private final List<String> applicationArgs;
+    
+    // Send time (nanos) of every PR whose review has not been posted yet
+    private final Map<Integer, Long> pending = new ConcurrentHashMap<>();
+    private final List<Long> latencies = new ArrayList<>();
+    private final AtomicInteger prNumbers = new AtomicInteger();
+    private final AtomicInteger accepted = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicInteger failedReviews = new AtomicInteger();
+    private final AtomicLong lastCompletion = new AtomicLong();
+    
+    private HttpClient httpClient;
+    private Mac mac;
+    
+    LoadTestDriver(Map<String, String> options, List<String> applicationArgs) {
+        this.options = options;
+        this.applicationArgs = applicationArgs;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> applicationArgs = new ArrayList<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String name = arg.startsWith("--") && eq > 2 ? arg.substring(2, eq) : null;
+            if (name != null && isDriverOption(name)) {
+                options.put(name, arg.substring(eq + 1));
+            } else {
+                applicationArgs.add(arg);
+            }
+        }
+        new LoadTestDriver(options, applicationArgs).run();
+        System.exit(0);
+    }
+    
+    private static boolean isDriverOption(String name) {
+        return name.startsWith("github-") || name.startsWith("gemini-") || name.equals("target")
+            || List.of("rps", "duration-seconds", "drain-seconds", "files-per-pr", "lines-per-file",
+                "webhook-secret").contains(name);
+    }
+    
+    void run() throws Exception {
+        double rps = number("rps", 5);
+        long durationSeconds = (long) number("duration-seconds", 60);
+        long drainSeconds = (long) number("drain-seconds", 120);
+        String secret = options.getOrDefault("webhook-secret", "load-test-secret");
+        
+        try (GitHubStub github = new GitHubStub((int) number("github-port", 0), behavior("github", 50, 30, 0, 0),
+                 (int) number("files-per-pr", 6), (int) number("lines-per-file", 30),
+                 (int) number("github-rate-limit", 5000), this::reviewPosted);
+             GeminiStub gemini = new GeminiStub((int) number("gemini-port", 0), behavior("gemini", 1200, 800, 0.01, 0.02))) {
+            github.start();
+            gemini.start();
+            
+            ConfigurableApplicationContext application = null;
+            String target = options.get("target");
+            if (target == null) {
+                application = startApplication(github.baseUrl(), gemini.baseUrl(), secret);
+                target = "http://127.0.0.1:" + application.getEnvironment().getProperty("local.server.port");
+            }
+            
+            try {
+                httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+                mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+                URI webhook = URI.create(target + "/webhook/github");
+                
+                log.info("🚦 Sending {} webhooks/s for {}s to {}", rps, durationSeconds, webhook);
+                long started = System.nanoTime();
+                ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor();
+                sender.scheduleAtFixedRate(() -> send(webhook), 0, (long) (1_000_000_000L / rps), TimeUnit.NANOSECONDS);
+                TimeUnit.SECONDS.sleep(durationSeconds);
+                sender.shutdownNow();
+                long sendSeconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started);
+                
+                long drainUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(drainSeconds);
+                while (!pending.isEmpty() && System.nanoTime() - drainUntil < 0) {
+                    TimeUnit.MILLISECONDS.sleep(200);
+                }
+                report(started, sendSeconds, github, gemini);
+            } finally {
+                if (application != null) {
+                    application.close();
+                }
+            }
+        }
+    }
+    
+    private ConfigurableApplicationContext startApplication(String githubUrl, String geminiUrl, String secret)
+            throws Exception {
+        // Passed as arguments so they win over application.yml; user arguments come last and win over these
+        List<String> args = new ArrayList<>(List.of(
+            "--server.port=0",
+            "--github.api-url=" + githubUrl,
+            "--gemini.base-url=" + geminiUrl,
+            "--github.webhook.secret=" + secret,
+            "--github.http-cache.dir=" + Files.createTempDirectory("loadtest-github-cache"),
+            "--GITHUB_TOKEN=load-test-token",
+            "--GITHUB_REPOSITORY=load-test/repo",
+            "--GEMINI_API_KEY=load-test-key",
+            // No journal: every run starts from an empty queue
+            "--code-review.journal.path=",
+            "--logging.level.com.seevis.codereview=INFO",
+            "--logging.level.org.springframework.web=WARN"));
+        args.addAll(applicationArgs);
+        // Same as the runWeb task: keeps the CLI runner from reviewing and exiting
+        System.setProperty("web.mode", "true");
+        
+        return new SpringApplicationBuilder(GitHubCodeReviewerWebApplication.class)
+            .web(WebApplicationType.SERVLET)
+            .profiles("web")
+            .run(args.toArray(String[]::new));
+    }
+    
+    private void send(URI webhook) {
+        int prNumber = prNumbers.incrementAndGet();
+        byte[] payload = payload(prNumber);
+        HttpRequest request = HttpRequest.newBuilder(webhook)
+            .timeout(Duration.ofSeconds(10))
+            .header("Content-Type", "application/json")
+            .header("X-GitHub-Event", "pull_request")
+            .header("X-GitHub-Delivery", "load-" + prNumber)
+            .header("X-Hub-Signature-256", "sha256=" + HexFormat.of().formatHex(mac.doFinal(payload)))
+            .POST(HttpRequest.BodyPublishers.ofByteArray(payload))
+            .build();
+        
+        pending.put(prNumber, System.nanoTime());
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, e) -> {
+            if (e == null && response.statusCode() == 202) {
+                accepted.incrementAndGet();
+                return;
+            }
+            pending.remove(prNumber);
+            if (e == null && response.statusCode() == 503) {
+                rejected.incrementAndGet();
+            } else {
+                errors.incrementAndGet();
+                log.warn("Webhook for PR #{} failed: {}", prNumber, e != null ? e.getMessage() : response.statusCode());
+            }
+        });
+    }
+    
+    private void reviewPosted(int prNumber, boolean failed) {
+        Long sentAt = pending.remove(prNumber);
+        if (sentAt == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        synchronized (latencies) {
+            latencies.add(now - sentAt);
+        }
+        lastCompletion.set(now);
+        if (failed) {
+            failedReviews.incrementAndGet();
+        }
+    }
+    
+    private void report(long started, long sendSeconds, GitHubStub github, GeminiStub gemini) {
+        List<Long> sorted;
+        synchronized (latencies) {
+            sorted = new ArrayList<>(latencies);
+        }
+        sorted.sort(null);
+        double elapsedSeconds = (Math.max(lastCompletion.get(), started) - started) / 1e9;
+        
+        log.info("=========================================================");
+        log.info("  Load test results");
+        log.info("=========================================================");
+        log.info("  Webhooks sent:     {} in {}s ({} accepted, {} rejected with 503, {} errors)",
+            prNumbers.get(), sendSeconds, accepted.get(), rejected.get(), errors.get());
+        log.info("  Reviews posted:    {} ({} failed), {} still pending", sorted.size(), failedReviews.get(), pending.size());
+        log.info("  Throughput:        {} reviews/s",
+            String.format("%.2f", elapsedSeconds > 0 ? sorted.size() / elapsedSeconds : 0));
+        log.info("  Review latency:    p50 {} ms, p90 {} ms, p99 {} ms, max {} ms",
+            percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99), percentile(sorted, 1.0));
+        log.info("  GitHub stub:       {} requests, {} injected faults", github.getRequests(), github.getFaults());
+        log.info("  Gemini stub:       {} requests, {} injected faults", gemini.getRequests(), gemini.getFaults());
+        log.info("=========================================================");
+    }
+    
+    private static long percentile(List<Long> sorted, double quantile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.size()) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sorted.get(Math.max(0, Math.min(sorted.size() - 1, index))));
+    }
+    
+    private byte[] payload(int prNumber) {
+        ObjectNode payload = StubServer.JSON.createObjectNode();
+        payload.put("action", "opened");
+        payload.put("number", prNumber);
+        ObjectNode pr = payload.putObject("pull_request");
+        pr.put("number", prNumber);
+        pr.put("state", "open");
+        pr.put("title", "Load test PR #" + prNumber);
+        // Real PR descriptions make up most of a webhook body
+        pr.put("body", "Load test pull request. ".repeat(80));
+        pr.put("draft", false);
+        pr.put("changed_files", (int) number("files-per-pr", 6));
+        pr.putObject("user").put("login", "load-tester").put("id", 2);
+        pr.putObject("head").put("ref", "feature/load-" + prNumber).put("sha", GitHubStub.headSha(prNumber));
+        pr.putObject("base").put("ref", "main").put("sha", GitHubStub.headSha(0));
+        ObjectNode repository = payload.putObject("repository");
+        repository.put("id", 1);
+        repository.put("name", "repo");
+        repository.put("full_name", "load-test/repo");
+        repository.putObject("owner").put("login", "load-test").put("id", 1);
+        payload.putObject("sender").put("login", "load-tester").put("id", 2);
+        return payload.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private StubBehavior behavior(String stub, long latencyMs, long jitterMs, double errorRate, double throttleRate) {
+        return new StubBehavior(
+            (long) number(stub + "-latency-ms", latencyMs),
+            (long) number(stub + "-jitter-ms", jitterMs),
+            number(stub + "-error-rate", errorRate),
+            number(stub + "-throttle-rate", throttleRate),
+            (int) number(stub + "-retry-after-seconds", 1));
+    }
+    
+    private double number(String name, double defaultValue) {
+        String value = options.get(name);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+}
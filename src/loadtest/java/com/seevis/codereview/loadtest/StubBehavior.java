@@ -0,0 +1,40 @@
+package com.seevis.codereview.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How a stub server misbehaves: a base latency plus uniform jitter before every answer, and
+ * a share of requests failed with a 5xx or throttled with a 429.
+ */
+public record StubBehavior(long latencyMs, long jitterMs, double errorRate, double throttleRate,
+                           int retryAfterSeconds) {
+    
+    public static final int OK = 200;
+    
+    /**
+     * Sleeps for the configured latency and decides the outcome of one request:
+     * {@link #OK}, 429 or 500.
+     */
+    public int apply() throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = latencyMs + (jitterMs > 0 ? random.nextLong(jitterMs + 1) : 0);
+        if (delay > 0) {
+            TimeUnit.MILLISECONDS.sleep(delay);
+        }
+        double roll = random.nextDouble();
+        if (roll < throttleRate) {
+            return 429;
+        }
+        if (roll < throttleRate + errorRate) {
+            return 500;
+        }
+        return OK;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%d±%d ms, %.1f%% errors, %.1f%% 429s (Retry-After %ds)",
+            latencyMs, jitterMs, errorRate * 100, throttleRate * 100, retryAfterSeconds);
+    }
+}
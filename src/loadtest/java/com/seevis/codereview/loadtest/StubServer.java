@@ -0,0 +1,128 @@
+package com.seevis.codereview.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal HTTP stand-in built on the JDK's {@link HttpServer}. Every request first goes through
+ * the {@link StubBehavior} (latency, injected errors and throttling); requests that survive are
+ * answered by {@link #handle(HttpExchange)}.
+ */
+@Slf4j
+public abstract class StubServer implements AutoCloseable {
+    
+    protected static final ObjectMapper JSON = new ObjectMapper();
+    
+    private final String name;
+    private final int port;
+    private final StubBehavior behavior;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong faults = new AtomicLong();
+    
+    private HttpServer server;
+    private ExecutorService executor;
+    
+    protected StubServer(String name, int port, StubBehavior behavior) {
+        this.name = name;
+        this.port = port;
+        this.behavior = behavior;
+    }
+    
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        // One thread per in-flight request, so injected latency does not queue requests
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", this::dispatch);
+        server.start();
+        log.info("🧪 {} stub listening on {} ({})", name, baseUrl(), behavior);
+    }
+    
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+    
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+    
+    public long getRequests() {
+        return requests.get();
+    }
+    
+    public long getFaults() {
+        return faults.get();
+    }
+    
+    /**
+     * Answers a request that was not failed by the stub behavior.
+     */
+    protected abstract void handle(HttpExchange exchange) throws IOException;
+    
+    /**
+     * Answers a request the stub behavior decided to fail with {@code status} (429 or 500).
+     */
+    protected abstract void fail(HttpExchange exchange, int status) throws IOException;
+    
+    /**
+     * Requests that are never failed, e.g. connectivity checks made once at startup.
+     */
+    protected boolean isExempt(HttpExchange exchange) {
+        return false;
+    }
+    
+    protected void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+    
+    protected void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        send(exchange, status, "application/json; charset=utf-8", JSON.writeValueAsString(body));
+    }
+    
+    protected String readBody(HttpExchange exchange) throws IOException {
+        return new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    }
+    
+    protected StubBehavior behavior() {
+        return behavior;
+    }
+    
+    private void dispatch(HttpExchange exchange) {
+        requests.incrementAndGet();
+        try (exchange) {
+            int outcome = isExempt(exchange) ? StubBehavior.OK : behavior.apply();
+            if (outcome != StubBehavior.OK) {
+                faults.incrementAndGet();
+                fail(exchange, outcome);
+            } else {
+                handle(exchange);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("{} stub failed on {} {}: {}", name, exchange.getRequestMethod(),
+                exchange.getRequestURI(), e.getMessage());
+        }
+    }
+}
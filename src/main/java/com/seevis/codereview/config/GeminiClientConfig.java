@@ -0,0 +1,70 @@
+package com.seevis.codereview.config;
+
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+@Configuration
+@Slf4j
+public class GeminiClientConfig {
+    
+    @Value("${gemini.base-url:https://generativelanguage.googleapis.com}")
+    private String baseUrl;
+    
+    @Value("${gemini.timeout-seconds:60}")
+    private int timeoutSeconds;
+    
+    @Value("${gemini.connect-timeout-seconds:10}")
+    private int connectTimeoutSeconds;
+    
+    @Value("${gemini.max-connections:100}")
+    private int maxConnections;
+    
+    @Value("${gemini.max-response-size-mb:16}")
+    private int maxResponseSizeMb;
+    
+    /**
+     * Non-blocking client for the Gemini REST API. Connections are pooled and kept alive,
+     * and HTTP/2 is negotiated via ALPN when the server supports it. A plain {@code http://}
+     * base URL (a local stand-in, e.g. the load test stub) is spoken to over HTTP/1.1 without TLS.
+     */
+    @Bean
+    public WebClient geminiWebClient() {
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("gemini")
+            .maxConnections(maxConnections)
+            .pendingAcquireMaxCount(maxConnections * 10)
+            .maxIdleTime(Duration.ofSeconds(30))
+            .evictInBackground(Duration.ofSeconds(60))
+            .build();
+        
+        HttpClient httpClient = HttpClient.create(connectionProvider);
+        if (baseUrl.startsWith("https:")) {
+            httpClient = httpClient
+                .protocol(HttpProtocol.H2, HttpProtocol.HTTP11)
+                .secure();
+        }
+        httpClient = httpClient
+            .keepAlive(true)
+            .compress(true)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutSeconds * 1000)
+            .responseTimeout(Duration.ofSeconds(timeoutSeconds));
+        
+        log.info("Gemini HTTP client for {}: max {} connections, connect timeout {}s, response timeout {}s",
+            baseUrl, maxConnections, connectTimeoutSeconds, timeoutSeconds);
+        
+        return WebClient.builder()
+            .baseUrl(baseUrl)
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(maxResponseSizeMb * 1024 * 1024))
+            .build();
+    }
+}
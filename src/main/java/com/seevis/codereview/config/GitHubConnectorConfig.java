@@ -0,0 +1,49 @@
+package com.seevis.codereview.config;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import org.kohsuke.github.connector.GitHubConnector;
+import org.kohsuke.github.extras.okhttp3.OkHttpGitHubConnector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+@Slf4j
+public class GitHubConnectorConfig {
+    
+    @Value("${timeouts.github-api:30}")
+    private int timeoutSeconds;
+    
+    @Value("${github.http-cache.dir:${java.io.tmpdir}/github-http-cache}")
+    private String cacheDir;
+    
+    @Value("${github.http-cache.size-mb:50}")
+    private long cacheSizeMb;
+    
+    /**
+     * Shared connector for every GitHub client. The OkHttp response cache makes repeated GETs
+     * conditional (If-None-Match with the stored ETag); a 304 answer is served from the cache
+     * and does not count against the GitHub rate limit.
+     */
+    @Bean
+    public GitHubConnector gitHubConnector() {
+        OkHttpClient client = new OkHttpClient.Builder()
+            .cache(new Cache(new File(cacheDir), cacheSizeMb * 1024 * 1024))
+            .connectionPool(new ConnectionPool(20, 5, TimeUnit.MINUTES))
+            .connectTimeout(Duration.ofSeconds(timeoutSeconds))
+            .readTimeout(Duration.ofSeconds(timeoutSeconds))
+            .build();
+        
+        log.info("GitHub HTTP cache at {} ({} MB)", cacheDir, cacheSizeMb);
+        
+        // max-age=0 forces revalidation, so cached entries are never served stale
+        return new OkHttpGitHubConnector(client, 0);
+    }
+}
@@ -4,6 +4,7 @@ import com.seevis.codereview.model.PullRequest;
 import com.seevis.codereview.model.ReviewRequest;
 import com.seevis.codereview.model.ReviewResponse;
 import com.seevis.codereview.service.CodeReviewOrchestrator;
+import com.seevis.codereview.service.GitHubRateLimitedException;
 import com.seevis.codereview.service.GitHubService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -14,6 +15,7 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
@@ -21,6 +23,8 @@ import org.springframework.web.bind.annotation.*;
 
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -53,6 +57,7 @@ public class CodeReviewController {
         ),
         @ApiResponse(responseCode = "400", description = "잘못된 요청"),
         @ApiResponse(responseCode = "404", description = "PR을 찾을 수 없음"),
+        @ApiResponse(responseCode = "429", description = "GitHub API 한도 초과"),
         @ApiResponse(responseCode = "500", description = "서버 오류")
     })
     public ResponseEntity<ReviewResponse> reviewPullRequest(
@@ -72,6 +77,8 @@ public class CodeReviewController {
                 .build();
             
             return ResponseEntity.ok(response);
+        } catch (GitHubRateLimitedException e) {
+            return rateLimited(prNumber, e);
         } catch (Exception e) {
             log.error("Failed to review PR #{}: {}", prNumber, e.getMessage(), e);
             
@@ -94,22 +101,54 @@ public class CodeReviewController {
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "리뷰 성공"),
         @ApiResponse(responseCode = "400", description = "잘못된 요청"),
+        @ApiResponse(responseCode = "429", description = "GitHub API 한도 초과"),
         @ApiResponse(responseCode = "500", description = "서버 오류")
     })
     public ResponseEntity<ReviewResponse> reviewCustom(@Valid @RequestBody ReviewRequest request) {
         log.info("Received custom review request for {}, PR #{}", 
             request.getRepository(), request.getPrNumber());
         
-        // 여기서는 간단한 응답만 반환 (실제 구현 시 repository 설정 변경 필요)
+        // 요청한 repository의 클라이언트로 리뷰 실행 (옵션: 파일 패턴, 최대 파일/코멘트 수)
+        try {
+            orchestrator.reviewPullRequest(request.getRepository(), request.getPrNumber(), request.getOptions());
+            
+            ReviewResponse response = ReviewResponse.builder()
+                .prNumber(request.getPrNumber())
+                .status("completed")
+                .message(String.format("코드 리뷰가 성공적으로 완료되었습니다: %s PR #%d", 
+                    request.getRepository(), request.getPrNumber()))
+                .timestamp(System.currentTimeMillis())
+                .build();
+            
+            return ResponseEntity.ok(response);
+        } catch (GitHubRateLimitedException e) {
+            return rateLimited(request.getPrNumber(), e);
+        } catch (Exception e) {
+            log.error("Failed to review {} PR #{}: {}", request.getRepository(), request.getPrNumber(), e.getMessage(), e);
+            
+            ReviewResponse errorResponse = ReviewResponse.builder()
+                .prNumber(request.getPrNumber())
+                .status("failed")
+                .message("리뷰 실패: " + e.getMessage())
+                .timestamp(System.currentTimeMillis())
+                .build();
+            
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        }
+    }
+    
+    // GitHub 쿼터 소진: PR은 그대로 두고 리셋 이후 재시도하도록 429 반환
+    private ResponseEntity<ReviewResponse> rateLimited(int prNumber, GitHubRateLimitedException e) {
+        long retryAfter = Math.max(1, Duration.between(Instant.now(), e.getResetAt()).getSeconds());
         ReviewResponse response = ReviewResponse.builder()
-            .prNumber(request.getPrNumber())
-            .status("accepted")
-            .message(String.format("리뷰 요청이 접수되었습니다: %s PR #%d", 
-                request.getRepository(), request.getPrNumber()))
+            .prNumber(prNumber)
+            .status("rate_limited")
+            .message("GitHub API 한도 초과, " + retryAfter + "초 후 다시 시도하세요: " + e.getMessage())
             .timestamp(System.currentTimeMillis())
             .build();
-        
-        return ResponseEntity.ok(response);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+            .body(response);
     }
     
     @GetMapping("/pr/{prNumber}")
@@ -127,7 +166,7 @@ public class CodeReviewController {
             @PathVariable @Min(1) int prNumber) {
         
         try {
-            PullRequest pr = gitHubService.getPullRequest(prNumber);
+            PullRequest pr = gitHubService.getPullRequest(gitHubService.getRepository(), prNumber);
             return ResponseEntity.ok(pr);
         } catch (Exception e) {
             log.error("Failed to get PR info for #{}: {}", prNumber, e.getMessage());
@@ -1,21 +1,20 @@
 package com.seevis.codereview.controller;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.seevis.codereview.service.WebhookService;
+import com.seevis.codereview.model.ReviewJob;
+import com.seevis.codereview.model.WebhookEvent;
+import com.seevis.codereview.service.ReviewJobScheduler;
+import com.seevis.codereview.service.ReviewedHeadTracker;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -26,13 +25,16 @@ import java.util.Map;
 public class WebhookController {
     
     @Autowired
-    private WebhookService webhookService;
+    private ReviewJobScheduler reviewJobScheduler;
     
     @Autowired
-    private ObjectMapper objectMapper;
+    private ReviewedHeadTracker reviewedHeadTracker;
     
-    @Value("${github.webhook.secret:}")
-    private String webhookSecret;
+    @Autowired
+    private WebhookEventParser webhookEventParser;
+    
+    @Autowired
+    private WebhookSignatureVerifier webhookSignatureVerifier;
     
     @PostMapping("/github")
     @Operation(
@@ -43,13 +45,14 @@ public class WebhookController {
         @ApiResponse(responseCode = "200", description = "Webhook 처리 성공"),
         @ApiResponse(responseCode = "202", description = "Webhook 처리 대기열에 추가됨"),
         @ApiResponse(responseCode = "400", description = "잘못된 요청"),
-        @ApiResponse(responseCode = "401", description = "인증 실패")
+        @ApiResponse(responseCode = "401", description = "인증 실패"),
+        @ApiResponse(responseCode = "503", description = "리뷰 대기열 포화 (Retry-After 이후 재시도)")
     })
     public ResponseEntity<Map<String, Object>> handleGitHubWebhook(
             @RequestHeader(value = "X-GitHub-Event", required = false) String eventType,
             @RequestHeader(value = "X-Hub-Signature-256", required = false) String signature,
             @RequestHeader(value = "X-GitHub-Delivery", required = false) String deliveryId,
-            @RequestBody String payload) {
+            @RequestBody byte[] payload) {
         
         log.info("📨 Received GitHub webhook - Event: {}, Delivery: {}", eventType, deliveryId);
         
@@ -57,8 +60,8 @@ public class WebhookController {
         
         try {
             // 서명 검증 (webhook secret이 설정된 경우)
-            if (webhookSecret != null && !webhookSecret.isEmpty()) {
-                if (!verifySignature(payload, signature)) {
+            if (webhookSignatureVerifier.isConfigured()) {
+                if (!webhookSignatureVerifier.verify(payload, signature)) {
                     log.error("❌ Invalid webhook signature");
                     response.put("status", "error");
                     response.put("message", "Invalid signature");
@@ -66,10 +69,7 @@ public class WebhookController {
                 }
             }
             
-            // JSON 파싱
-            JsonNode jsonPayload = objectMapper.readTree(payload);
-            
-            // 이벤트 타입별 처리
+            // 이벤트 타입별 처리 (필요한 필드만 스트리밍 파싱)
             switch (eventType) {
                 case "ping":
                     response.put("status", "success");
@@ -78,17 +78,17 @@ public class WebhookController {
                     return ResponseEntity.ok(response);
                     
                 case "pull_request":
-                    return handlePullRequestEvent(jsonPayload);
+                    return handlePullRequestEvent(webhookEventParser.parse(payload));
                     
                 case "pull_request_review":
-                    return handlePullRequestReviewEvent(jsonPayload);
+                    return handlePullRequestReviewEvent(webhookEventParser.parse(payload));
                     
                 case "pull_request_review_comment":
-                    return handlePullRequestReviewCommentEvent(jsonPayload);
+                    return handlePullRequestReviewCommentEvent(webhookEventParser.parse(payload));
                     
                 case "installation":
                 case "installation_repositories":
-                    return handleInstallationEvent(jsonPayload, eventType);
+                    return handleInstallationEvent(webhookEventParser.parse(payload), eventType);
                     
                 default:
                     log.info("⚠️ Unhandled event type: {}", eventType);
@@ -105,32 +105,43 @@ public class WebhookController {
         }
     }
     
-    private ResponseEntity<Map<String, Object>> handlePullRequestEvent(JsonNode payload) {
+    private ResponseEntity<Map<String, Object>> handlePullRequestEvent(WebhookEvent event) {
         Map<String, Object> response = new HashMap<>();
         
         try {
-            String action = payload.get("action").asText();
-            JsonNode pullRequest = payload.get("pull_request");
-            JsonNode repository = payload.get("repository");
-            
-            int prNumber = pullRequest.get("number").asInt();
-            String repoFullName = repository.get("full_name").asText();
-            String installationId = payload.path("installation").path("id").asText();
+            String action = event.getAction();
+            int prNumber = event.getPrNumber();
+            String repoFullName = event.getRepository();
+            String installationId = event.getInstallationId();
             
             log.info("🔍 PR Event - Action: {}, Repo: {}, PR: #{}", action, repoFullName, prNumber);
             
             // PR이 열리거나 업데이트될 때만 리뷰 실행
             if ("opened".equals(action) || "synchronize".equals(action) || "reopened".equals(action)) {
                 // 드래프트 PR은 건너뛰기
-                if (pullRequest.get("draft").asBoolean()) {
+                if (event.isDraft()) {
                     log.info("⏭️ Skipping draft PR #{}", prNumber);
                     response.put("status", "skipped");
                     response.put("message", "Draft PRs are not reviewed");
                     return ResponseEntity.ok(response);
                 }
                 
-                // 비동기로 코드 리뷰 실행
-                webhookService.processCodeReview(repoFullName, prNumber, installationId);
+                // 리뷰 작업을 대기열에 추가 (가득 찬 경우 재시도 요청)
+                ReviewJob job = ReviewJob.builder()
+                    .repository(repoFullName)
+                    .prNumber(prNumber)
+                    .installationId(installationId)
+                    .headSha(event.getHeadSha())
+                    .changedFiles(event.getChangedFiles())
+                    .build();
+                
+                if (!reviewJobScheduler.submit(job)) {
+                    response.put("status", "rejected");
+                    response.put("message", "Review queue is full, retry later");
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(reviewJobScheduler.getRetryAfterSeconds()))
+                        .body(response);
+                }
                 
                 response.put("status", "accepted");
                 response.put("message", String.format("Code review queued for %s PR #%d", repoFullName, prNumber));
@@ -142,6 +153,7 @@ public class WebhookController {
                 
             } else if ("closed".equals(action)) {
                 log.info("📕 PR #{} closed", prNumber);
+                reviewedHeadTracker.forget(repoFullName, prNumber);
                 response.put("status", "ignored");
                 response.put("message", "PR closed");
                 return ResponseEntity.ok(response);
@@ -161,11 +173,11 @@ public class WebhookController {
         }
     }
     
-    private ResponseEntity<Map<String, Object>> handlePullRequestReviewEvent(JsonNode payload) {
+    private ResponseEntity<Map<String, Object>> handlePullRequestReviewEvent(WebhookEvent event) {
         Map<String, Object> response = new HashMap<>();
         
-        String action = payload.get("action").asText();
-        int prNumber = payload.path("pull_request").path("number").asInt();
+        String action = event.getAction();
+        int prNumber = event.getPrNumber();
         
         log.info("📝 PR Review Event - Action: {}, PR: #{}", action, prNumber);
         
@@ -174,11 +186,11 @@ public class WebhookController {
         return ResponseEntity.ok(response);
     }
     
-    private ResponseEntity<Map<String, Object>> handlePullRequestReviewCommentEvent(JsonNode payload) {
+    private ResponseEntity<Map<String, Object>> handlePullRequestReviewCommentEvent(WebhookEvent event) {
         Map<String, Object> response = new HashMap<>();
         
-        String action = payload.get("action").asText();
-        int prNumber = payload.path("pull_request").path("number").asInt();
+        String action = event.getAction();
+        int prNumber = event.getPrNumber();
         
         log.info("💬 PR Review Comment Event - Action: {}, PR: #{}", action, prNumber);
         
@@ -187,10 +199,10 @@ public class WebhookController {
         return ResponseEntity.ok(response);
     }
     
-    private ResponseEntity<Map<String, Object>> handleInstallationEvent(JsonNode payload, String eventType) {
+    private ResponseEntity<Map<String, Object>> handleInstallationEvent(WebhookEvent event, String eventType) {
         Map<String, Object> response = new HashMap<>();
         
-        String action = payload.get("action").asText();
+        String action = event.getAction();
         
         log.info("⚙️ Installation Event - Type: {}, Action: {}", eventType, action);
         
@@ -209,31 +221,4 @@ public class WebhookController {
         
         return ResponseEntity.ok(response);
     }
-    
-    private boolean verifySignature(String payload, String signature) {
-        if (signature == null || !signature.startsWith("sha256=")) {
-            return false;
-        }
-        
-        try {
-            Mac mac = Mac.getInstance("HmacSHA256");
-            SecretKeySpec secretKeySpec = new SecretKeySpec(webhookSecret.getBytes(), "HmacSHA256");
-            mac.init(secretKeySpec);
-            byte[] hash = mac.doFinal(payload.getBytes());
-            
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            
-            String calculatedSignature = "sha256=" + hexString.toString();
-            return calculatedSignature.equals(signature);
-            
-        } catch (Exception e) {
-            log.error("Error verifying signature", e);
-            return false;
-        }
-    }
-}
\ No newline at end of file
+}
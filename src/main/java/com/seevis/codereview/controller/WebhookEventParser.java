@@ -0,0 +1,94 @@
+package com.seevis.codereview.controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.seevis.codereview.model.WebhookEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Pulls the fields of {@link WebhookEvent} out of a raw webhook body with Jackson's streaming
+ * parser. Everything else (PR body, user and repository objects, ...) is skipped without being
+ * decoded into strings or tree nodes.
+ */
+@Component
+public class WebhookEventParser {
+    
+    private final JsonFactory jsonFactory;
+    
+    @Autowired
+    public WebhookEventParser(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+    
+    public WebhookEvent parse(byte[] payload) throws IOException {
+        WebhookEvent event = new WebhookEvent();
+        int topLevelNumber = 0;
+        
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Webhook payload is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "action" -> event.setAction(parser.getValueAsString());
+                    case "number" -> topLevelNumber = parser.getValueAsInt();
+                    case "pull_request" -> readPullRequest(parser, value, event);
+                    case "repository" -> event.setRepository(readField(parser, value, "full_name"));
+                    case "installation" -> event.setInstallationId(readField(parser, value, "id"));
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        
+        if (event.getPrNumber() == 0) {
+            event.setPrNumber(topLevelNumber);
+        }
+        return event;
+    }
+    
+    private void readPullRequest(JsonParser parser, JsonToken value, WebhookEvent event) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken child = parser.nextToken();
+            switch (field) {
+                case "number" -> event.setPrNumber(parser.getValueAsInt());
+                case "draft" -> event.setDraft(parser.getValueAsBoolean());
+                case "changed_files" -> event.setChangedFiles(parser.getValueAsInt());
+                case "head" -> event.setHeadSha(readField(parser, child, "sha"));
+                default -> parser.skipChildren();
+            }
+        }
+    }
+    
+    /**
+     * Reads one scalar member of the object at the current token as text, skipping the rest.
+     */
+    private String readField(JsonParser parser, JsonToken value, String name) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String result = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (name.equals(field) && parser.currentToken().isScalarValue()) {
+                result = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return result;
+    }
+}
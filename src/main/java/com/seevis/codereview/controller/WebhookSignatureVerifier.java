@@ -0,0 +1,114 @@
+package com.seevis.codereview.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * Checks {@code X-Hub-Signature-256} against the webhook secret.
+ * <p>
+ * The key is set up once at startup; each thread then reuses its own initialized {@link Mac}
+ * (cloned from a prototype). It is reset before every use, since a streamed body that failed
+ * mid-read leaves it partially updated. The header is hex-decoded to the 32 digest bytes and
+ * compared with {@link MessageDigest#isEqual}, which does not exit early on the first
+ * mismatching byte.
+ */
+@Component
+@Slf4j
+public class WebhookSignatureVerifier {
+    
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String PREFIX = "sha256=";
+    private static final int DIGEST_HEX_LENGTH = 64;
+    
+    private Mac prototype;
+    private ThreadLocal<Mac> macs;
+    
+    @Value("${github.webhook.secret:}")
+    private String webhookSecret;
+    
+    @PostConstruct
+    public void initialize() {
+        if (!isConfigured()) {
+            log.info("Webhook secret not configured, signature verification disabled");
+            return;
+        }
+        try {
+            prototype = Mac.getInstance(ALGORITHM);
+            prototype.init(new SecretKeySpec(webhookSecret.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+            macs = ThreadLocal.withInitial(this::newMac);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialize " + ALGORITHM, e);
+        }
+    }
+    
+    public boolean isConfigured() {
+        return webhookSecret != null && !webhookSecret.isEmpty();
+    }
+    
+    public boolean verify(byte[] payload, String signature) {
+        byte[] expected = decode(signature);
+        if (expected == null) {
+            return false;
+        }
+        Mac mac = macs.get();
+        mac.reset();
+        return MessageDigest.isEqual(mac.doFinal(payload), expected);
+    }
+    
+    /**
+     * Verifies a body read straight from {@code body} (e.g. the servlet input stream) without
+     * buffering it. The stream is consumed but not closed.
+     */
+    public boolean verify(InputStream body, String signature) throws IOException {
+        byte[] expected = decode(signature);
+        if (expected == null) {
+            return false;
+        }
+        Mac mac = macs.get();
+        mac.reset();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            mac.update(buffer, 0, read);
+        }
+        return MessageDigest.isEqual(mac.doFinal(), expected);
+    }
+    
+    private byte[] decode(String signature) {
+        if (signature == null || !signature.startsWith(PREFIX)
+                || signature.length() != PREFIX.length() + DIGEST_HEX_LENGTH) {
+            return null;
+        }
+        try {
+            return HexFormat.of().parseHex(signature, PREFIX.length(), signature.length());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    private Mac newMac() {
+        try {
+            return (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            // Providers without clone support: initialize a fresh instance with the same key
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM, prototype.getProvider());
+                mac.init(new SecretKeySpec(webhookSecret.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+                return mac;
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("Cannot initialize " + ALGORITHM, ex);
+            }
+        }
+    }
+}
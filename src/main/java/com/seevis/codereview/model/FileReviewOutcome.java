@@ -0,0 +1,20 @@
+package com.seevis.codereview.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileReviewOutcome {
+    private CodeChange change;
+    private ReviewResult result; // null when the review failed
+    private String error; // failure reason, null on success
+    
+    public boolean isFailed() {
+        return error != null;
+    }
+}
@@ -18,6 +18,7 @@ public class PullRequest {
     private String author;
     private String baseBranch;
     private String headBranch;
+    private String headSha;
     private String state;
     private Date createdAt;
     private Date updatedAt;
@@ -0,0 +1,23 @@
+package com.seevis.codereview.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewJob {
+    private String repository; // owner/repo
+    private int prNumber;
+    private String installationId;
+    private String headSha;
+    private int changedFiles; // used for prioritization, small PRs first
+    private long enqueuedAt; // epoch millis
+    
+    public String getKey() {
+        return repository + "#" + prNumber;
+    }
+}
@@ -1,5 +1,6 @@
 package com.seevis.codereview.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -17,4 +18,11 @@ public class ReviewResult {
     private String severity; // overall severity: info, warning, error
     private List<ReviewIssue> issues;
     private List<String> positives; // positive feedback
+    @JsonIgnore
+    private String error; // set on placeholder results for a failed review, never from Gemini's reply
+    
+    @JsonIgnore
+    public boolean isFailed() {
+        return error != null;
+    }
 }
\ No newline at end of file
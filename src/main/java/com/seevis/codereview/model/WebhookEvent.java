@@ -0,0 +1,23 @@
+package com.seevis.codereview.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The handful of webhook payload fields the service acts on.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WebhookEvent {
+    private String action;
+    private int prNumber; // pull_request.number, falling back to the top-level number
+    private boolean draft;
+    private String repository; // owner/repo
+    private String installationId;
+    private String headSha;
+    private int changedFiles;
+}
@@ -1,29 +1,63 @@
 package com.seevis.codereview.service;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.seevis.codereview.model.CodeChange;
+import com.seevis.codereview.model.PullRequest;
 import com.seevis.codereview.model.ReviewResult;
 import com.seevis.codereview.model.ReviewIssue;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.annotation.Primary;
-import org.springframework.http.*;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
 import jakarta.annotation.PostConstruct;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 @Service
 @Slf4j
 public class AIReviewService {
     
-    private static final String GEMINI_API_URL = "https://generativelanguage.googleapis.com/v1beta/models/{model}:generateContent?key={apiKey}";
+    // Relative to gemini.base-url, which is set on the WebClient
+    private static final String GEMINI_API_URL = "/v1beta/models/{model}:generateContent?key={apiKey}";
+    private static final String GEMINI_STREAM_URL = "/v1beta/models/{model}:streamGenerateContent?alt=sse&key={apiKey}";
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE = new ParameterizedTypeReference<>() {};
+    private static final BiConsumer<CodeChange, ReviewIssue> NO_LISTENER = (change, issue) -> { };
+    
+    // Bump whenever the review prompts change so cached results from the old prompt are not reused
+    static final String PROMPT_VERSION = "v4";
+    
+    // PR descriptions beyond this are cut off in the shared context
+    private static final int MAX_DESCRIPTION_LENGTH = 4000;
+    
+    @Autowired
+    private WebClient geminiWebClient;
+    
+    @Autowired
+    private ReviewResultCache reviewResultCache;
+    
+    @Autowired
+    private GeminiRateLimiter geminiRateLimiter;
+    
+    @Autowired
+    private ReviewMetrics reviewMetrics;
+    
+    @Autowired
+    private GeminiContextCache geminiContextCache;
     
-    private RestTemplate restTemplate;
     private ObjectMapper objectMapper;
     
     @Value("${GEMINI_API_KEY:}")
@@ -38,10 +72,26 @@ public class AIReviewService {
     @Value("${gemini.max-tokens:2048}")
     private int maxTokens;
     
+    @Value("${gemini.batch.max-output-tokens:8192}")
+    private int batchMaxTokens;
+    
+    @Value("${gemini.streaming:false}")
+    private boolean streaming;
+    
+    // Gemini response schemas for single-file and multi-file replies (OpenAPI subset)
+    private ObjectNode reviewSchema;
+    private ObjectNode batchReviewSchema;
+    
     @PostConstruct
     public void initialize() {
-        this.restTemplate = new RestTemplate();
-        this.objectMapper = new ObjectMapper();
+        this.objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.reviewSchema = reviewSchema(false);
+        this.batchReviewSchema = objectMapper.createObjectNode().put("type", "OBJECT");
+        batchReviewSchema.putObject("properties").putObject("files")
+            .put("type", "ARRAY")
+            .set("items", reviewSchema(true));
+        batchReviewSchema.putArray("required").add("files");
         
         if (apiKey != null && !apiKey.isEmpty() && !apiKey.equals("your-api-key-here")) {
             log.info("✅ Gemini AI service initialized with model: {}", modelName);
@@ -51,27 +101,221 @@ public class AIReviewService {
     }
     
     public ReviewResult reviewCode(CodeChange change) {
-        log.debug("Reviewing file with Gemini: {}", change.getFileName());
+        return reviewCodeAsync(change).block();
+    }
+    
+    /**
+     * Reviews a single file without blocking the caller. The Gemini call only starts on
+     * subscription, and cancelling the subscription aborts the HTTP exchange.
+     */
+    public Mono<ReviewResult> reviewCodeAsync(CodeChange change) {
+        PromptPacker.Part part = new PromptPacker.Part(0, change, change.getPatch(), 1, 1);
+        return reviewBatchAsync(new PromptPacker.Batch(List.of(part)))
+            .map(results -> results.get(0));
+    }
+    
+    /**
+     * Reviews one packed request (see {@link PromptPacker}) and returns one result per part, in
+     * part order. Parts already in the cache are not sent; a single remaining part uses the
+     * single-file prompt, several use one multi-file prompt.
+     */
+    public Mono<List<ReviewResult>> reviewBatchAsync(PromptPacker.Batch batch) {
+        return reviewBatchAsync(null, batch, NO_LISTENER);
+    }
+    
+    /**
+     * Same as {@link #reviewBatchAsync(PromptPacker.Batch)}, additionally passing every issue to
+     * {@code onIssue} once. With {@code gemini.streaming} enabled, single-file requests use the
+     * streaming endpoint and report each issue as soon as it has been received.
+     * <p>
+     * The reviewer instructions and, if {@code pullRequest} is given, its title, description and
+     * branches are sent as context shared by all requests of the PR (see {@link GeminiContextCache});
+     * the request itself only carries the patches.
+     */
+    public Mono<List<ReviewResult>> reviewBatchAsync(PullRequest pullRequest, PromptPacker.Batch batch,
+                                                     BiConsumer<CodeChange, ReviewIssue> onIssue) {
+        List<PromptPacker.Part> parts = batch.parts();
+        parts.forEach(part -> log.debug("Reviewing file with Gemini: {}", part.change().getFileName()));
         
         if (apiKey == null || apiKey.isEmpty() || apiKey.equals("your-api-key-here")) {
-            return createMockReview(change);
+            return Mono.fromSupplier(() -> parts.stream()
+                .map(part -> notifyIssues(createMockReview(part.change()), part.change(), onIssue))
+                .toList());
         }
         
-        try {
-            String prompt = buildReviewPrompt(change);
-            String review = callGeminiAPI(prompt);
-            return parseReviewResult(review, change);
-        } catch (Exception e) {
-            log.error("Error during Gemini AI review for file {}: {}", change.getFileName(), e.getMessage());
-            return createErrorReview(change, e.getMessage());
-        }
+        return Mono.defer(() -> {
+            ReviewResult[] results = new ReviewResult[parts.size()];
+            List<Integer> pending = new ArrayList<>();
+            List<String> cacheKeys = new ArrayList<>(parts.size());
+            
+            for (int i = 0; i < parts.size(); i++) {
+                PromptPacker.Part part = parts.get(i);
+                String cacheKey = reviewResultCache.keyFor(
+                    modelName, PROMPT_VERSION, part.change().getFileName(), part.patch());
+                cacheKeys.add(cacheKey);
+                
+                Optional<ReviewResult> cached = reviewResultCache.get(cacheKey);
+                if (cached.isPresent()) {
+                    log.debug("Cache hit for {}", part.change().getFileName());
+                    results[i] = notifyIssues(cached.get(), part.change(), onIssue);
+                } else {
+                    pending.add(i);
+                }
+            }
+            
+            if (pending.isEmpty()) {
+                return Mono.just(Arrays.asList(results));
+            }
+            
+            String context = buildContext(pullRequest);
+            Mono<Void> reviews = pending.size() == 1
+                ? reviewSinglePart(context, parts.get(pending.get(0)), cacheKeys.get(pending.get(0)), onIssue)
+                    .doOnNext(result -> results[pending.get(0)] = result)
+                    .then()
+                : reviewMultipleParts(context, pending.stream().map(parts::get).toList(),
+                        pending.stream().map(cacheKeys::get).toList(), onIssue)
+                    .doOnNext(batchResults -> {
+                        for (int i = 0; i < pending.size(); i++) {
+                            results[pending.get(i)] = batchResults.get(i);
+                        }
+                    })
+                    .then();
+            
+            return reviews.then(Mono.fromSupplier(() -> Arrays.asList(results)));
+        });
+    }
+    
+    private Mono<ReviewResult> reviewSinglePart(String context, PromptPacker.Part part, String cacheKey,
+                                                BiConsumer<CodeChange, ReviewIssue> onIssue) {
+        CodeChange change = part.change();
+        Mono<ReviewResult> review = streaming
+            ? Mono.defer(() -> streamGeminiAPI(context, buildReviewPrompt(part), maxTokens, change, onIssue))
+            : Mono.defer(() -> callGeminiAPI(context, buildReviewPrompt(part), maxTokens, reviewSchema))
+                .map(text -> {
+                    Timer.Sample parse = reviewMetrics.start();
+                    ReviewResult result = parseReviewResult(text, change);
+                    reviewMetrics.stop(parse, ReviewMetrics.PARSE);
+                    return notifyIssues(result, change, onIssue);
+                });
+        return review
+            .doOnNext(result -> reviewResultCache.put(cacheKey, result))
+            .onErrorResume(e -> {
+                log.error("Error during Gemini AI review for file {}: {}", change.getFileName(), e.getMessage());
+                return Mono.just(createErrorReview(change, e.getMessage()));
+            });
+    }
+    
+    private Mono<List<ReviewResult>> reviewMultipleParts(String context, List<PromptPacker.Part> parts, List<String> cacheKeys,
+                                                         BiConsumer<CodeChange, ReviewIssue> onIssue) {
+        return Mono.defer(() -> callGeminiAPI(context, buildBatchReviewPrompt(parts), batchMaxTokens, batchReviewSchema))
+            .map(review -> {
+                Timer.Sample parse = reviewMetrics.start();
+                Map<String, ReviewResult> byFile = parseBatchReviewResult(review);
+                reviewMetrics.stop(parse, ReviewMetrics.PARSE);
+                List<ReviewResult> results = new ArrayList<>(parts.size());
+                for (int i = 0; i < parts.size(); i++) {
+                    CodeChange change = parts.get(i).change();
+                    ReviewResult result = byFile.get(change.getFileName());
+                    if (result != null) {
+                        checkLines(result, change);
+                        reviewResultCache.put(cacheKeys.get(i), result);
+                        results.add(notifyIssues(result, change, onIssue));
+                    } else {
+                        log.warn("Batch response did not include {}", change.getFileName());
+                        results.add(createErrorReview(change, "File missing from batch response"));
+                    }
+                }
+                return results;
+            })
+            .onErrorResume(e -> {
+                log.error("Error during Gemini AI batch review of {} files: {}", parts.size(), e.getMessage());
+                return Mono.just(parts.stream().map(part -> createErrorReview(part.change(), e.getMessage())).toList());
+            });
+    }
+    
+    private Mono<String> callGeminiAPI(String context, String prompt, int maxOutputTokens, ObjectNode responseSchema) {
+        return withContext(context, cachedContent -> {
+            ObjectNode requestBody = buildRequestBody(context, cachedContent, prompt, maxOutputTokens, responseSchema);
+            
+            // Make API call (paced and retried per model and key)
+            return geminiRateLimiter.execute(modelName, apiKey, () -> timed(geminiWebClient.post()
+                    .uri(GEMINI_API_URL, modelName, apiKey)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(requestBody.toString())
+                    .retrieve()
+                    .bodyToMono(JsonNode.class)));
+        })
+            .doOnNext(response -> reviewMetrics.recordTokenUsage(modelName, response.path("usageMetadata")))
+            .map(this::extractResponseText);
+    }
+    
+    // Sends with the cached context if there is one; if Gemini rejects its name, drops it and sends the context inline
+    private <T> Mono<T> withContext(String context, Function<Optional<String>, Mono<T>> send) {
+        return geminiContextCache.lookup(modelName, apiKey, context)
+            .flatMap(cachedContent -> send.apply(cachedContent)
+                .onErrorResume(e -> cachedContent.isPresent() && GeminiContextCache.isRejected(e), e -> {
+                    log.warn("Gemini rejected cached context {}, sending it inline: {}", cachedContent.get(), e.getMessage());
+                    geminiContextCache.invalidate(modelName, apiKey, context);
+                    return send.apply(Optional.empty());
+                }));
     }
     
-    private String callGeminiAPI(String prompt) throws Exception {
-        String url = GEMINI_API_URL.replace("{model}", modelName).replace("{apiKey}", apiKey);
+    /**
+     * Streams the reply over server-sent events. Each event carries a fragment of the model's
+     * text, which is fed straight into an {@link IncrementalReviewParser}; the full reply is
+     * never held as one string. Once an issue has been reported the request is no longer
+     * retried, so listeners never see the same issue twice.
+     */
+    private Mono<ReviewResult> streamGeminiAPI(String context, String prompt, int maxOutputTokens, CodeChange change,
+                                               BiConsumer<CodeChange, ReviewIssue> onIssue) {
+        AtomicBoolean delivered = new AtomicBoolean();
+        DiffIndex diff = DiffIndex.parse(change.getPatch());
         
-        // Build request body
+        return withContext(context, cachedContent -> streamGeminiAPI(
+            buildRequestBody(context, cachedContent, prompt, maxOutputTokens, reviewSchema), change, diff, delivered, onIssue));
+    }
+    
+    private Mono<ReviewResult> streamGeminiAPI(ObjectNode requestBody, CodeChange change, DiffIndex diff,
+                                               AtomicBoolean delivered, BiConsumer<CodeChange, ReviewIssue> onIssue) {
+        return geminiRateLimiter.execute(modelName, apiKey, () -> {
+            IncrementalReviewParser parser = new IncrementalReviewParser(change.getFileName(), issue -> {
+                checkLine(issue, diff, change);
+                delivered.set(true);
+                onIssue.accept(change, issue);
+            });
+            return timed(geminiWebClient.post()
+                .uri(GEMINI_STREAM_URL, modelName, apiKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .bodyValue(requestBody.toString())
+                .retrieve()
+                .bodyToFlux(SSE_TYPE)
+                .doOnNext(event -> parser.feed(extractStreamedText(event.data())))
+                .then(Mono.fromCallable(parser::finish)))
+                .onErrorMap(e -> delivered.get() && GeminiRateLimiter.isRetryable(e),
+                    e -> new IllegalStateException("Stream interrupted after partial results: " + e.getMessage(), e));
+        });
+    }
+    
+    // Times one HTTP attempt; retries are timed separately
+    private <T> Mono<T> timed(Mono<T> call) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = reviewMetrics.start();
+            return call
+                .doOnSuccess(value -> reviewMetrics.stopGeminiCall(sample, modelName, true))
+                .doOnError(e -> reviewMetrics.stopGeminiCall(sample, modelName, false));
+        });
+    }
+    
+    private ObjectNode buildRequestBody(String context, Optional<String> cachedContent, String prompt,
+                                        int maxOutputTokens, ObjectNode responseSchema) {
+        // Build request body (shared context by reference if it is cached, inline otherwise)
         ObjectNode requestBody = objectMapper.createObjectNode();
+        if (cachedContent.isPresent()) {
+            requestBody.put("cachedContent", cachedContent.get());
+        } else {
+            requestBody.putObject("systemInstruction").putArray("parts").addObject().put("text", context);
+        }
         ArrayNode contents = requestBody.putArray("contents");
         ObjectNode content = contents.addObject();
         ArrayNode parts = content.putArray("parts");
@@ -80,9 +324,12 @@ public class AIReviewService {
         // Add generation config
         ObjectNode generationConfig = requestBody.putObject("generationConfig");
         generationConfig.put("temperature", temperature);
-        generationConfig.put("maxOutputTokens", maxTokens);
+        generationConfig.put("maxOutputTokens", maxOutputTokens);
         generationConfig.put("topP", 0.95);
         generationConfig.put("topK", 40);
+        // Constrain the reply to JSON matching the schema, so it can be bound without any cleanup
+        generationConfig.put("responseMimeType", "application/json");
+        generationConfig.set("responseSchema", responseSchema);
         
         // Add safety settings (optional - adjust as needed)
         ArrayNode safetySettings = requestBody.putArray("safetySettings");
@@ -98,63 +345,79 @@ public class AIReviewService {
             setting.put("threshold", "BLOCK_NONE");
         }
         
-        // Make API call
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        
-        HttpEntity<String> request = new HttpEntity<>(requestBody.toString(), headers);
-        
-        ResponseEntity<String> response = restTemplate.exchange(
-            url, 
-            HttpMethod.POST, 
-            request, 
-            String.class
-        );
-        
-        // Parse response
-        JsonNode responseJson = objectMapper.readTree(response.getBody());
+        return requestBody;
+    }
+    
+    private String extractResponseText(JsonNode responseJson) {
         JsonNode candidates = responseJson.path("candidates");
         if (candidates.isArray() && candidates.size() > 0) {
             JsonNode firstCandidate = candidates.get(0);
-            JsonNode content1 = firstCandidate.path("content");
-            JsonNode parts1 = content1.path("parts");
-            if (parts1.isArray() && parts1.size() > 0) {
-                return parts1.get(0).path("text").asText();
+            JsonNode content = firstCandidate.path("content");
+            JsonNode parts = content.path("parts");
+            if (parts.isArray() && parts.size() > 0) {
+                return parts.get(0).path("text").asText();
             }
         }
         
-        throw new RuntimeException("Invalid response from Gemini API");
+        throw new IllegalStateException("Invalid response from Gemini API");
     }
     
-    private String buildReviewPrompt(CodeChange change) {
-        return String.format("""
-            You are an expert code reviewer with 20+ years of experience.
-            Review the following code changes and provide constructive feedback.
-            
-            File: %s
-            Status: %s
-            Lines added: %d, Lines deleted: %d
-            
-            Code changes:
-            ```diff
-            %s
-            ```
-            
-            Please analyze this code and provide a JSON response with the following structure:
-            {
-              "summary": "Brief summary of the changes",
-              "severity": "info|warning|error",
-              "issues": [
-                {
-                  "line": line_number_or_null,
-                  "type": "bug|performance|security|style|best-practice",
-                  "severity": "info|warning|error",
-                  "message": "Description of the issue",
-                  "suggestion": "How to fix it"
-                }
-              ],
-              "positives": ["List of good practices found in the code"]
+    // Stream chunks may carry no text (e.g. the final chunk with only finishReason/usageMetadata)
+    private String extractStreamedText(String chunk) {
+        if (chunk == null || chunk.isEmpty()) {
+            return "";
+        }
+        try {
+            JsonNode root = objectMapper.readTree(chunk);
+            JsonNode candidate = root.path("candidates").path(0);
+            if (candidate.has("finishReason")) {
+                reviewMetrics.recordTokenUsage(modelName, root.path("usageMetadata"));
+            }
+            JsonNode parts = candidate.path("content").path("parts");
+            StringBuilder text = new StringBuilder();
+            for (JsonNode part : parts) {
+                text.append(part.path("text").asText(""));
+            }
+            return text.toString();
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid stream chunk from Gemini API: " + e.getMessage(), e);
+        }
+    }
+    
+    private ReviewResult checkLines(ReviewResult result, CodeChange change) {
+        if (result.getIssues() != null && !result.getIssues().isEmpty()) {
+            DiffIndex diff = DiffIndex.parse(change.getPatch());
+            for (ReviewIssue issue : result.getIssues()) {
+                checkLine(issue, diff, change);
             }
+        }
+        return result;
+    }
+    
+    // Models sometimes cite lines outside the diff; such issues are kept, but for the file as a whole
+    private void checkLine(ReviewIssue issue, DiffIndex diff, CodeChange change) {
+        if (issue.getLine() != null && diff.hunkCount() > 0 && !diff.isCommentable(issue.getLine())) {
+            log.debug("{}: line {} is not part of the diff", change.getFileName(), issue.getLine());
+            issue.setLine(null);
+        }
+    }
+    
+    private ReviewResult notifyIssues(ReviewResult result, CodeChange change, BiConsumer<CodeChange, ReviewIssue> onIssue) {
+        if (result.getIssues() != null) {
+            result.getIssues().forEach(issue -> onIssue.accept(change, issue));
+        }
+        return result;
+    }
+    
+    /**
+     * The part of the prompt shared by every request of a review: the reviewer instructions and,
+     * if known, the pull request being reviewed.
+     */
+    String buildContext(PullRequest pullRequest) {
+        StringBuilder context = new StringBuilder("""
+            You are an expert code reviewer with 20+ years of experience.
+            You review the code changes of a pull request, one or a few files per request, and provide
+            constructive feedback.
             
             Focus on:
             1. Potential bugs and logic errors
@@ -163,68 +426,180 @@ public class AIReviewService {
             4. Code quality and maintainability
             5. Best practices for the programming language
             
-            Return ONLY the JSON response, no additional text or markdown formatting.
+            Line numbers refer to the new version of a file; leave the line empty for issues that concern
+            a file as a whole. When a request contains several files, include exactly one entry per file,
+            with fileName exactly as given.
+            """);
+        
+        if (pullRequest != null) {
+            String description = pullRequest.getDescription();
+            if (description == null || description.isBlank()) {
+                description = "(none)";
+            } else if (description.length() > MAX_DESCRIPTION_LENGTH) {
+                description = description.substring(0, MAX_DESCRIPTION_LENGTH) + "...";
+            }
+            context.append(String.format("""
+                
+                Pull request #%d: %s
+                Branches: %s -> %s
+                Description:
+                %s
+                """,
+                pullRequest.getNumber(),
+                pullRequest.getTitle(),
+                pullRequest.getHeadBranch(),
+                pullRequest.getBaseBranch(),
+                description));
+        }
+        return context.toString();
+    }
+    
+    String buildReviewPrompt(PromptPacker.Part part) {
+        CodeChange change = part.change();
+        return String.format("""
+            Review the following code changes.
+            
+            File: %s
+            Status: %s
+            Lines added: %d, Lines deleted: %d
+            %s
+            Code changes:
+            ```diff
+            %s
+            ```
             """, 
             change.getFileName(),
             change.getStatus(),
             change.getAdditions(),
             change.getDeletions(),
-            change.getPatch() != null ? change.getPatch() : "No patch available"
+            part.isChunked()
+                ? String.format("Part %d of %d (the diff was split at hunk boundaries)%n", part.chunk(), part.chunks())
+                : "",
+            part.patch() != null ? part.patch() : "No patch available"
         );
     }
     
-    private ReviewResult parseReviewResult(String review, CodeChange change) {
-        try {
-            // Clean the response
-            review = review.trim();
-            
-            // Remove markdown code blocks if present
-            if (review.contains("```json")) {
-                int start = review.indexOf("```json") + 7;
-                int end = review.lastIndexOf("```");
-                if (end > start) {
-                    review = review.substring(start, end).trim();
-                }
-            } else if (review.startsWith("```")) {
-                review = review.replaceAll("```", "").trim();
-            }
-            
-            JsonNode json = objectMapper.readTree(review);
-            
-            ReviewResult result = new ReviewResult();
-            result.setFileName(change.getFileName());
-            result.setSummary(json.path("summary").asText("Code review completed"));
-            result.setSeverity(json.path("severity").asText("info"));
-            
-            List<ReviewIssue> issues = new ArrayList<>();
-            JsonNode issuesNode = json.path("issues");
-            if (issuesNode.isArray()) {
-                for (JsonNode issueNode : issuesNode) {
-                    ReviewIssue issue = new ReviewIssue();
-                    issue.setLine(issueNode.path("line").isNull() ? null : issueNode.path("line").asInt());
-                    issue.setType(issueNode.path("type").asText("general"));
-                    issue.setSeverity(issueNode.path("severity").asText("info"));
-                    issue.setMessage(issueNode.path("message").asText());
-                    issue.setSuggestion(issueNode.path("suggestion").asText());
-                    issues.add(issue);
-                }
-            }
-            result.setIssues(issues);
+    private String buildBatchReviewPrompt(List<PromptPacker.Part> parts) {
+        StringBuilder files = new StringBuilder();
+        for (int i = 0; i < parts.size(); i++) {
+            CodeChange change = parts.get(i).change();
+            files.append(String.format("""
+                ### File %d: %s
+                Status: %s
+                Lines added: %d, Lines deleted: %d
+                ```diff
+                %s
+                ```
+                
+                """,
+                i + 1,
+                change.getFileName(),
+                change.getStatus(),
+                change.getAdditions(),
+                change.getDeletions(),
+                parts.get(i).patch() != null ? parts.get(i).patch() : "No patch available"));
+        }
+        
+        return String.format("""
+            Review the code changes in the following %d files.
             
-            List<String> positives = new ArrayList<>();
-            JsonNode positivesNode = json.path("positives");
-            if (positivesNode.isArray()) {
-                for (JsonNode positive : positivesNode) {
-                    positives.add(positive.asText());
-                }
+            %s""",
+            parts.size(),
+            files
+        );
+    }
+    
+    ReviewResult parseReviewResult(String review, CodeChange change) {
+        try {
+            return checkLines(withDefaults(objectMapper.readValue(review, ReviewResult.class), change.getFileName()), change);
+        } catch (Exception e) {
+            log.debug("Raw response: {}", review);
+            throw new IllegalStateException("Failed to parse AI response: " + e.getMessage(), e);
+        }
+    }
+    
+    private Map<String, ReviewResult> parseBatchReviewResult(String review) {
+        try {
+            Map<String, ReviewResult> results = new HashMap<>();
+            BatchReview batch = objectMapper.readValue(review, BatchReview.class);
+            for (ReviewResult file : batch.files() != null ? batch.files() : List.<ReviewResult>of()) {
+                results.put(file.getFileName(), withDefaults(file, file.getFileName()));
             }
-            result.setPositives(positives);
-            
-            return result;
+            return results;
         } catch (Exception e) {
-            log.error("Failed to parse Gemini response: {}", e.getMessage());
             log.debug("Raw response: {}", review);
-            return createErrorReview(change, "Failed to parse AI response");
+            throw new IllegalStateException("Failed to parse AI batch response: " + e.getMessage(), e);
+        }
+    }
+    
+    // The schema makes every field optional to the model; fill in what it left out
+    private ReviewResult withDefaults(ReviewResult result, String fileName) {
+        result.setFileName(fileName);
+        if (result.getSummary() == null) {
+            result.setSummary("Code review completed");
+        }
+        if (result.getSeverity() == null) {
+            result.setSeverity("info");
+        }
+        if (result.getIssues() == null) {
+            result.setIssues(new ArrayList<>());
+        }
+        for (ReviewIssue issue : result.getIssues()) {
+            if (issue.getType() == null) {
+                issue.setType("general");
+            }
+            if (issue.getSeverity() == null) {
+                issue.setSeverity("info");
+            }
+            if (issue.getMessage() == null) {
+                issue.setMessage("");
+            }
+            if (issue.getSuggestion() == null) {
+                issue.setSuggestion("");
+            }
+        }
+        if (result.getPositives() == null) {
+            result.setPositives(new ArrayList<>());
+        }
+        return result;
+    }
+    
+    // Mirrors ReviewResult and ReviewIssue; the batch variant adds fileName
+    private ObjectNode reviewSchema(boolean withFileName) {
+        ObjectNode issue = objectMapper.createObjectNode().put("type", "OBJECT");
+        ObjectNode issueProperties = issue.putObject("properties");
+        issueProperties.putObject("line")
+            .put("type", "INTEGER")
+            .put("nullable", true)
+            .put("description", "Line number in the new version of the file");
+        enumProperty(issueProperties, "type", "bug", "performance", "security", "style", "best-practice");
+        enumProperty(issueProperties, "severity", "info", "warning", "error");
+        issueProperties.putObject("message").put("type", "STRING").put("description", "Description of the issue");
+        issueProperties.putObject("suggestion").put("type", "STRING").put("description", "How to fix it");
+        issue.putArray("required").add("type").add("severity").add("message");
+        
+        ObjectNode review = objectMapper.createObjectNode().put("type", "OBJECT");
+        ObjectNode properties = review.putObject("properties");
+        ArrayNode required = review.putArray("required");
+        if (withFileName) {
+            properties.putObject("fileName").put("type", "STRING");
+            required.add("fileName");
+        }
+        properties.putObject("summary").put("type", "STRING").put("description", "Brief summary of the changes");
+        enumProperty(properties, "severity", "info", "warning", "error");
+        properties.putObject("issues").put("type", "ARRAY").set("items", issue);
+        properties.putObject("positives")
+            .put("type", "ARRAY")
+            .put("description", "Good practices found in the code")
+            .putObject("items").put("type", "STRING");
+        required.add("summary").add("severity").add("issues");
+        return review;
+    }
+    
+    private static void enumProperty(ObjectNode properties, String name, String... values) {
+        ArrayNode allowed = properties.putObject(name).put("type", "STRING").putArray("enum");
+        for (String value : values) {
+            allowed.add(value);
         }
     }
     
@@ -255,9 +630,13 @@ public class AIReviewService {
         ReviewResult result = new ReviewResult();
         result.setFileName(change.getFileName());
         result.setSummary("Review failed: " + error);
+        result.setError(error);
         result.setSeverity("warning");
         result.setIssues(new ArrayList<>());
         result.setPositives(new ArrayList<>());
         return result;
     }
+    
+    private record BatchReview(List<ReviewResult> files) {
+    }
 }
\ No newline at end of file
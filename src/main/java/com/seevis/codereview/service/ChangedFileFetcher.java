@@ -0,0 +1,125 @@
+package com.seevis.codereview.service;
+
+import com.seevis.codereview.model.CodeChange;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.kohsuke.github.GHException;
+import org.kohsuke.github.GHPullRequest;
+import org.kohsuke.github.GHPullRequestFileDetail;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.PagedIterator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.seevis.codereview.service.GitHubCallScheduler.Priority.NORMAL;
+
+/**
+ * Lists a PR's changed files as a stream of pages, so filtering and review can start on the
+ * first page while later ones are still being fetched.
+ * <p>
+ * Each page is one GitHub request of {@code github.files.page-size} files, paced through the
+ * {@link GitHubCallScheduler} and timed as the {@code changed_files} stage. Pages are fetched on
+ * demand, at most {@code github.files.prefetch-pages} ahead of the consumer: a subscriber that
+ * stops early (or is cancelled) leaves the remaining pages unrequested.
+ */
+@Service
+@Slf4j
+public class ChangedFileFetcher {
+    
+    @Autowired
+    private GitHubCallScheduler gitHubCallScheduler;
+    
+    @Autowired
+    private ReviewMetrics reviewMetrics;
+    
+    @Value("${github.files.page-size:100}")
+    private int pageSize;
+    
+    @Value("${github.files.prefetch-pages:2}")
+    private int prefetchPages;
+    
+    /**
+     * The PR's changed files, one list per page. Pages are fetched on a bounded-elastic thread;
+     * a failed request ends the stream with its {@link IOException} (e.g.
+     * {@link GitHubRateLimitedException}).
+     */
+    public Flux<List<CodeChange>> pages(GitHub github, GHPullRequest pullRequest) {
+        return Flux.<List<CodeChange>, PagedIterator<GHPullRequestFileDetail>>generate(
+                () -> pullRequest.listFiles().withPageSize(pageSize).iterator(),
+                (files, sink) -> {
+                    try {
+                        Timer.Sample stage = reviewMetrics.start();
+                        List<GHPullRequestFileDetail> page = gitHubCallScheduler.call(github, NORMAL,
+                            () -> nextPage(files));
+                        reviewMetrics.stop(stage, ReviewMetrics.CHANGED_FILES);
+                        if (page.isEmpty()) {
+                            sink.complete();
+                        } else {
+                            log.debug("Fetched {} changed file(s) of PR #{}", page.size(), pullRequest.getNumber());
+                            sink.next(toChanges(page));
+                        }
+                    } catch (IOException e) {
+                        sink.error(e);
+                    }
+                    return files;
+                })
+            .subscribeOn(Schedulers.boundedElastic())
+            .publishOn(Schedulers.boundedElastic(), Math.max(1, prefetchPages));
+    }
+    
+    /**
+     * Blocks until {@code mono} completes. Reactor wraps checked exceptions when blocking; GitHub
+     * failures (e.g. {@link GitHubRateLimitedException}) are rethrown as the {@link IOException}
+     * they are.
+     */
+    static <T> T await(Mono<T> mono) throws IOException {
+        try {
+            return mono.block();
+        } catch (RuntimeException e) {
+            if (Exceptions.unwrap(e) instanceof IOException io) {
+                throw io;
+            }
+            throw e;
+        }
+    }
+    
+    private static List<GHPullRequestFileDetail> nextPage(PagedIterator<GHPullRequestFileDetail> files)
+            throws IOException {
+        try {
+            // hasNext() issues the request for the next page
+            return files.hasNext() ? files.nextPage() : List.of();
+        } catch (GHException e) {
+            // The iterator wraps request failures; surface them as the IOException they are
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw e;
+        }
+    }
+    
+    private static List<CodeChange> toChanges(List<GHPullRequestFileDetail> files) {
+        List<CodeChange> changes = new ArrayList<>(files.size());
+        for (GHPullRequestFileDetail file : files) {
+            changes.add(CodeChange.builder()
+                .fileName(file.getFilename())
+                .status(file.getStatus())
+                .additions(file.getAdditions())
+                .deletions(file.getDeletions())
+                .changes(file.getChanges())
+                .patch(file.getPatch())
+                .rawUrl(file.getRawUrl() != null ? file.getRawUrl().toString() : null)
+                .blobUrl(file.getBlobUrl() != null ? file.getBlobUrl().toString() : null)
+                .build());
+        }
+        return changes;
+    }
+}
@@ -1,13 +1,17 @@
 package com.seevis.codereview.service;
 
 import com.seevis.codereview.model.*;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 @Service
@@ -15,150 +19,248 @@ import java.util.stream.Collectors;
 public class CodeReviewOrchestrator {
     
     private final GitHubService gitHubService;
-    private final AIReviewService aiReviewService;
+    private final ParallelReviewService parallelReviewService;
+    private final ReviewedHeadTracker reviewedHeadTracker;
+    private final ReviewMetrics reviewMetrics;
+    private final FileFilter fileFilter;
     
     @Value("${code-review.max-files:50}")
     private int maxFilesToReview;
     
-    @Value("${code-review.max-file-size-kb:500}")
-    private int maxFileSizeKb;
-    
     @Value("${code-review.max-comments-per-review:20}")
     private int maxCommentsPerReview;
     
     @Autowired
-    public CodeReviewOrchestrator(GitHubService gitHubService, AIReviewService aiReviewService) {
+    public CodeReviewOrchestrator(GitHubService gitHubService, ParallelReviewService parallelReviewService,
+                                  ReviewedHeadTracker reviewedHeadTracker, ReviewMetrics reviewMetrics,
+                                  FileFilter fileFilter) {
         this.gitHubService = gitHubService;
-        this.aiReviewService = aiReviewService;
+        this.parallelReviewService = parallelReviewService;
+        this.reviewedHeadTracker = reviewedHeadTracker;
+        this.reviewMetrics = reviewMetrics;
+        this.fileFilter = fileFilter;
+    }
+    
+    public void reviewPullRequest(int prNumber) throws GitHubRateLimitedException {
+        reviewPullRequest(gitHubService.getRepository(), prNumber, null);
     }
     
-    public void reviewPullRequest(int prNumber) {
-        log.info("🚀 Starting code review for PR #{}", prNumber);
+    /**
+     * Reviews a PR of any repository the configured credentials can access. {@code options} (may
+     * be null) override the configured file and comment limits, and a file pattern
+     * (comma-separated globs) replaces the configured file types.
+     * <p>
+     * Running out of GitHub quota leaves the PR untouched (no failure comment or labels, which
+     * would spend more of it) and rethrows {@link GitHubRateLimitedException}, so the caller can
+     * retry after the reset.
+     */
+    public void reviewPullRequest(String repository, int prNumber, ReviewRequest.ReviewOptions options)
+            throws GitHubRateLimitedException {
+        log.info("🚀 Starting code review for {} PR #{}", repository, prNumber);
+        
+        String filePattern = options != null ? options.getFilePattern() : null;
+        int maxFiles = options != null && options.getMaxFiles() != null ? options.getMaxFiles() : maxFilesToReview;
+        int maxComments = options != null && options.getMaxComments() != null
+            ? options.getMaxComments() : maxCommentsPerReview;
+        if (options != null && options.getAiModel() != null) {
+            log.info("Ignoring requested AI model {}, reviews use the configured Gemini model", options.getAiModel());
+        }
         
         try {
             // 1. Get PR information
-            PullRequest pr = gitHubService.getPullRequest(prNumber);
+            Timer.Sample stage = reviewMetrics.start();
+            PullRequest pr = gitHubService.getPullRequest(repository, prNumber);
+            reviewMetrics.stop(stage, ReviewMetrics.PR_FETCH);
             log.info("📋 PR Title: {}", pr.getTitle());
             log.info("👤 Author: {}", pr.getAuthor());
             log.info("🔀 {} -> {}", pr.getHeadBranch(), pr.getBaseBranch());
             
-            // 2. Get changed files
-            List<CodeChange> changes;
-            try {
-                changes = gitHubService.getChangedFiles(prNumber);
-            } catch (Exception e) {
-                log.warn("Could not fetch real changes, using mock data: {}", e.getMessage());
-                // Mock data for testing
-                changes = List.of(
-                    CodeChange.builder()
-                        .fileName("Example.java")
-                        .status("modified")
-                        .additions(10)
-                        .deletions(5)
-                        .changes(15)
-                        .patch("@@ -1,5 +1,10 @@\n public class Example {\n+    // New method\n+    public void test() {\n+        System.out.println(\"test\");\n+    }\n }")
-                        .build()
-                );
+            // 2. Get changed files (only the newly pushed commits if this PR was reviewed before)
+            Optional<String> previousHead = reviewedHeadTracker.lastReviewedHead(repository, prNumber);
+            if (previousHead.isPresent() && previousHead.get().equals(pr.getHeadSha())) {
+                log.info("⏭️ Head {} of PR #{} was already reviewed", pr.getHeadSha(), prNumber);
+                return;
             }
-            log.info("📁 Total files changed: {}", changes.size());
+            boolean incremental = previousHead.isPresent() && pr.getHeadSha() != null;
             
-            if (changes.isEmpty()) {
-                gitHubService.postComment(prNumber, "✅ No files to review in this PR.");
-                return;
+            // The PR's files with their full patches, kept for mapping comment lines to diff positions
+            List<CodeChange> prFiles = Collections.synchronizedList(new ArrayList<>());
+            Flux<List<CodeChange>> pages;
+            if (incremental) {
+                // Comparing against the last reviewed head needs the complete file list
+                stage = reviewMetrics.start();
+                try {
+                    prFiles.addAll(gitHubService.getChangedFiles(repository, prNumber));
+                    pages = Flux.just(gitHubService.getChangedFilesSince(repository, prFiles,
+                        previousHead.get(), pr.getHeadSha()));
+                } catch (GitHubRateLimitedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    log.warn("Could not fetch real changes, using mock data: {}", e.getMessage());
+                    List<CodeChange> mock = mockChanges();
+                    prFiles.clear();
+                    prFiles.addAll(mock);
+                    pages = Flux.just(mock);
+                }
+                reviewMetrics.stop(stage, ReviewMetrics.CHANGED_FILES);
+            } else {
+                // Pages are filtered and reviewed as they arrive
+                AtomicBoolean received = new AtomicBoolean();
+                pages = gitHubService.streamChangedFiles(repository, prNumber)
+                    .doOnNext(page -> received.set(true))
+                    .onErrorResume(e -> !received.get() && !(e instanceof GitHubRateLimitedException), e -> {
+                        log.warn("Could not fetch real changes, using mock data: {}", e.getMessage());
+                        return Flux.just(mockChanges());
+                    })
+                    // Pages after max-files are not fetched, but no comment refers to their files
+                    .doOnNext(prFiles::addAll);
             }
             
-            // 3. Filter files for review
-            List<CodeChange> filesToReview = filterFilesForReview(changes);
+            // 3. Filter files for review, page by page, until max-files are selected
+            GitAttributes attributes = gitHubService.getGitAttributes(repository, pr.getHeadSha());
+            AtomicInteger totalChanges = new AtomicInteger();
+            List<CodeChange> filesToReview = Collections.synchronizedList(new ArrayList<>());
+            AtomicBoolean labelled = new AtomicBoolean();
+            Flux<List<CodeChange>> pagesToReview = pages
+                .map(page -> {
+                    Timer.Sample filterStage = reviewMetrics.start();
+                    totalChanges.addAndGet(page.size());
+                    List<CodeChange> selected = filterFilesForReview(page, attributes, filePattern,
+                        maxFiles - filesToReview.size());
+                    filesToReview.addAll(selected);
+                    reviewMetrics.stop(filterStage, ReviewMetrics.FILTER);
+                    
+                    // 4. Add "reviewing" label once there is something to review
+                    if (!selected.isEmpty() && labelled.compareAndSet(false, true)) {
+                        try {
+                            gitHubService.addLabel(repository, prNumber, "ai-reviewing");
+                        } catch (Exception e) {
+                            log.warn("Could not add label: {}", e.getMessage());
+                        }
+                    }
+                    return selected;
+                })
+                // Stop fetching pages once the limit is reached
+                .takeUntil(selected -> filesToReview.size() >= maxFiles);
+            
+            // 5. Perform AI review on each file (fanned out, results in file order)
+            List<ReviewComment> allComments = new ArrayList<>();
+            int successfulReviews = 0;
+            int failedReviews = 0;
+            
+            // Issues are logged as they arrive; comments are still built from the assembled outcomes
+            stage = reviewMetrics.start();
+            List<FileReviewOutcome> outcomes = ChangedFileFetcher.await(parallelReviewService
+                .reviewFilesAsync(pr, pagesToReview, (change, issue) ->
+                    log.info("    🔎 {}:{} [{}] {}", change.getFileName(),
+                        issue.getLine() != null ? issue.getLine() : "-", issue.getSeverity(), issue.getMessage()))
+                .collectList());
+            reviewMetrics.stop(stage, ReviewMetrics.AI_REVIEW);
+            log.info("📁 Total files changed: {}", totalChanges.get());
             log.info("🔍 Files to review after filtering: {}", filesToReview.size());
             
+            if (totalChanges.get() == 0) {
+                if (incremental) {
+                    log.info("No PR files changed since the last review");
+                    reviewedHeadTracker.markReviewed(repository, prNumber, pr.getHeadSha());
+                } else {
+                    gitHubService.postComment(repository, prNumber, "✅ No files to review in this PR.");
+                }
+                return;
+            }
             if (filesToReview.isEmpty()) {
-                gitHubService.postComment(prNumber, 
+                gitHubService.postComment(repository, prNumber, 
                     "ℹ️ All changed files were skipped (binary files, generated code, or too large).");
                 return;
             }
             
-            // 4. Add "reviewing" label
-            try {
-                gitHubService.addLabel(prNumber, "ai-reviewing");
-            } catch (Exception e) {
-                log.warn("Could not add label: {}", e.getMessage());
-            }
-            
-            // 5. Perform AI review on each file
-            List<ReviewComment> allComments = new ArrayList<>();
-            int successfulReviews = 0;
-            int failedReviews = 0;
-            
-            for (CodeChange change : filesToReview) {
-                try {
-                    log.info("  📝 Reviewing: {}", change.getFileName());
-                    ReviewResult result = aiReviewService.reviewCode(change);
+            List<String> failedFiles = new ArrayList<>();
+            for (FileReviewOutcome outcome : outcomes) {
+                if (outcome.isFailed()) {
+                    failedReviews++;
+                    failedFiles.add(outcome.getChange().getFileName());
+                    continue;
+                }
+                
+                ReviewResult result = outcome.getResult();
+                CodeChange change = outcome.getChange();
+                if (result != null && result.getIssues() != null) {
+                    List<ReviewComment> comments = convertToGitHubComments(result, change);
+                    allComments.addAll(comments);
+                    successfulReviews++;
                     
-                    if (result != null && result.getIssues() != null) {
-                        List<ReviewComment> comments = convertToGitHubComments(result, change);
-                        allComments.addAll(comments);
-                        successfulReviews++;
-                        
-                        // Log summary
-                        if (!result.getIssues().isEmpty()) {
-                            log.info("    Found {} issues in {}", 
-                                result.getIssues().size(), change.getFileName());
-                        }
+                    // Log summary
+                    if (!result.getIssues().isEmpty()) {
+                        log.info("    Found {} issues in {}", 
+                            result.getIssues().size(), change.getFileName());
                     }
-                } catch (Exception e) {
-                    log.error("Failed to review file {}: {}", change.getFileName(), e.getMessage());
-                    failedReviews++;
                 }
             }
             
             // 6. Post review results
             if (!allComments.isEmpty()) {
                 // Limit number of comments
-                if (allComments.size() > maxCommentsPerReview) {
-                    log.info("Limiting comments from {} to {}", allComments.size(), maxCommentsPerReview);
+                if (allComments.size() > maxComments) {
+                    log.info("Limiting comments from {} to {}", allComments.size(), maxComments);
                     allComments = allComments.stream()
                         .sorted(Comparator.comparing(ReviewComment::getSeverity).reversed())
-                        .limit(maxCommentsPerReview)
+                        .limit(maxComments)
                         .collect(Collectors.toList());
                 }
                 
-                gitHubService.postReview(prNumber, allComments);
+                stage = reviewMetrics.start();
+                gitHubService.postReview(repository, prNumber, prFiles, allComments);
+                reviewMetrics.stop(stage, ReviewMetrics.POST_REVIEW);
                 log.info("✅ Posted {} review comments", allComments.size());
+                if (!failedFiles.isEmpty()) {
+                    gitHubService.postComment(repository, prNumber, formatFailedFiles(failedFiles));
+                }
             } else {
                 String message = String.format(
                     "✨ **AI Code Review Complete**\n\n" +
                     "Great job! No significant issues found in the %d files reviewed.\n\n" +
                     "📊 **Summary:**\n" +
                     "- Files reviewed: %d\n" +
+                    "- Files failed: %d\n" +
                     "- Files skipped: %d\n" +
-                    "- Review status: ✅ All checks passed",
+                    "- Review status: %s",
                     successfulReviews,
                     successfulReviews,
-                    changes.size() - successfulReviews
+                    failedReviews,
+                    totalChanges.get() - successfulReviews - failedReviews,
+                    failedFiles.isEmpty() ? "✅ All checks passed" : "⚠️ Incomplete"
                 );
-                gitHubService.postComment(prNumber, message);
+                if (!failedFiles.isEmpty()) {
+                    message += "\n\n" + formatFailedFiles(failedFiles);
+                }
+                gitHubService.postComment(repository, prNumber, message);
             }
             
             // 7. Update labels
             try {
-                gitHubService.removeLabel(prNumber, "ai-reviewing");
-                gitHubService.addLabel(prNumber, "ai-reviewed");
+                gitHubService.removeLabel(repository, prNumber, "ai-reviewing");
+                gitHubService.addLabel(repository, prNumber, "ai-reviewed");
             } catch (Exception e) {
                 log.warn("Could not update labels: {}", e.getMessage());
             }
             
+            reviewedHeadTracker.markReviewed(repository, prNumber, pr.getHeadSha());
+            
             log.info("🎉 Code review completed successfully!");
             log.info("   Files reviewed: {}", successfulReviews);
             log.info("   Files failed: {}", failedReviews);
             log.info("   Comments posted: {}", allComments.size());
             
+        } catch (GitHubRateLimitedException e) {
+            log.warn("🚦 {} PR #{}: {}", repository, prNumber, e.getMessage());
+            throw e;
         } catch (IOException e) {
             log.error("❌ Failed to review PR: {}", e.getMessage(), e);
             try {
-                gitHubService.postComment(prNumber, 
+                gitHubService.postComment(repository, prNumber, 
                     "❌ Code review failed: " + e.getMessage());
-                gitHubService.removeLabel(prNumber, "ai-reviewing");
-                gitHubService.addLabel(prNumber, "ai-review-failed");
+                gitHubService.removeLabel(repository, prNumber, "ai-reviewing");
+                gitHubService.addLabel(repository, prNumber, "ai-review-failed");
             } catch (IOException ex) {
                 log.error("Failed to post error comment: {}", ex.getMessage());
             }
@@ -166,99 +268,32 @@ public class CodeReviewOrchestrator {
         }
     }
     
-    private List<CodeChange> filterFilesForReview(List<CodeChange> changes) {
-        return changes.stream()
-            .filter(change -> shouldReviewFile(change))
-            .limit(maxFilesToReview)
-            .collect(Collectors.toList());
-    }
-    
-    private boolean shouldReviewFile(CodeChange change) {
-        String fileName = change.getFileName().toLowerCase();
-        
-        // Skip binary files
-        if (isBinaryFile(fileName)) {
-            log.debug("Skipping binary file: {}", fileName);
-            return false;
-        }
-        
-        // Skip generated files
-        if (isGeneratedFile(fileName)) {
-            log.debug("Skipping generated file: {}", fileName);
-            return false;
-        }
-        
-        // Skip files that are too large
-        if (change.getChanges() > maxFileSizeKb * 20) { // Rough estimate: 20 changes per KB
-            log.debug("Skipping large file: {} ({} changes)", fileName, change.getChanges());
-            return false;
-        }
-        
-        // Skip files without patch (deleted files)
-        if (change.getPatch() == null || change.getPatch().isEmpty()) {
-            log.debug("Skipping file without patch: {}", fileName);
-            return false;
-        }
-        
-        // Only review code files
-        return isCodeFile(fileName);
-    }
-    
-    private boolean isCodeFile(String fileName) {
-        return fileName.endsWith(".java") ||
-               fileName.endsWith(".kt") ||
-               fileName.endsWith(".js") ||
-               fileName.endsWith(".ts") ||
-               fileName.endsWith(".jsx") ||
-               fileName.endsWith(".tsx") ||
-               fileName.endsWith(".py") ||
-               fileName.endsWith(".go") ||
-               fileName.endsWith(".rs") ||
-               fileName.endsWith(".cpp") ||
-               fileName.endsWith(".c") ||
-               fileName.endsWith(".cs") ||
-               fileName.endsWith(".rb") ||
-               fileName.endsWith(".php") ||
-               fileName.endsWith(".swift") ||
-               fileName.endsWith(".scala") ||
-               fileName.endsWith(".gradle") ||
-               fileName.endsWith(".xml") ||
-               fileName.endsWith(".yml") ||
-               fileName.endsWith(".yaml") ||
-               fileName.endsWith(".properties");
+    List<CodeChange> filterFilesForReview(List<CodeChange> changes, GitAttributes attributes, String filePattern) {
+        return filterFilesForReview(changes, attributes, filePattern, maxFilesToReview);
     }
     
-    private boolean isBinaryFile(String fileName) {
-        return fileName.endsWith(".jar") ||
-               fileName.endsWith(".class") ||
-               fileName.endsWith(".exe") ||
-               fileName.endsWith(".dll") ||
-               fileName.endsWith(".so") ||
-               fileName.endsWith(".dylib") ||
-               fileName.endsWith(".png") ||
-               fileName.endsWith(".jpg") ||
-               fileName.endsWith(".jpeg") ||
-               fileName.endsWith(".gif") ||
-               fileName.endsWith(".ico") ||
-               fileName.endsWith(".pdf") ||
-               fileName.endsWith(".zip") ||
-               fileName.endsWith(".tar") ||
-               fileName.endsWith(".gz");
+    List<CodeChange> filterFilesForReview(List<CodeChange> changes, GitAttributes attributes, String filePattern,
+                                          int limit) {
+        return fileFilter.filter(changes, attributes, filePattern).stream()
+            .limit(Math.max(0, limit))
+            .collect(Collectors.toList());
     }
     
-    private boolean isGeneratedFile(String fileName) {
-        return fileName.contains("/generated/") ||
-               fileName.contains("/build/") ||
-               fileName.contains("/target/") ||
-               fileName.contains("/dist/") ||
-               fileName.contains(".min.js") ||
-               fileName.contains(".min.css") ||
-               fileName.endsWith("package-lock.json") ||
-               fileName.endsWith("yarn.lock") ||
-               fileName.endsWith("gradle.lock");
+    private static List<CodeChange> mockChanges() {
+        // Mock data for testing
+        return List.of(
+            CodeChange.builder()
+                .fileName("Example.java")
+                .status("modified")
+                .additions(10)
+                .deletions(5)
+                .changes(15)
+                .patch("@@ -1,5 +1,10 @@\n public class Example {\n+    // New method\n+    public void test() {\n+        System.out.println(\"test\");\n+    }\n }")
+                .build()
+        );
     }
     
-    private List<ReviewComment> convertToGitHubComments(ReviewResult result, CodeChange change) {
+    List<ReviewComment> convertToGitHubComments(ReviewResult result, CodeChange change) {
         List<ReviewComment> comments = new ArrayList<>();
         
         if (result.getIssues() == null || result.getIssues().isEmpty()) {
@@ -315,4 +350,9 @@ public class CodeReviewOrchestrator {
             default -> "📝";
         };
     }
+    
+    private static String formatFailedFiles(List<String> fileNames) {
+        return String.format("⚠️ **%d file(s) could not be reviewed:** `%s`",
+            fileNames.size(), String.join("`, `", fileNames));
+    }
 }
\ No newline at end of file
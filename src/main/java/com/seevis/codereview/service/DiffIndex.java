@@ -0,0 +1,238 @@
+package com.seevis.codereview.service;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Compact index of one file's unified diff, built in a single pass over the patch without
+ * splitting it into line strings.
+ * <p>
+ * Per hunk it keeps the old and new line ranges and the hunk's offset in the patch text, all in
+ * parallel {@code int} arrays. Every new-side row (added or context line) gets a slot holding its
+ * GitHub diff position, and a {@link BitSet} over the same slots marks the added lines. Looking
+ * up a new-file line is a binary search over the hunk starts.
+ */
+public final class DiffIndex {
+    
+    private static final DiffIndex EMPTY = new DiffIndex("", 0, new int[0], new int[0], new int[0], new int[0],
+        new int[0], new int[0], new int[0], new BitSet());
+    
+    private final String patch;
+    private final int hunks;
+    private final int[] oldStart;
+    private final int[] oldLines;
+    private final int[] newStart;
+    private final int[] newLines;
+    // Offset of each hunk header in the patch text
+    private final int[] offsets;
+    // First row slot of each hunk
+    private final int[] rowBase;
+    // Diff position of each new-side row
+    private final int[] positions;
+    private final BitSet added;
+    
+    private DiffIndex(String patch, int hunks, int[] oldStart, int[] oldLines, int[] newStart, int[] newLines,
+                      int[] offsets, int[] rowBase, int[] positions, BitSet added) {
+        this.patch = patch;
+        this.hunks = hunks;
+        this.oldStart = oldStart;
+        this.oldLines = oldLines;
+        this.newStart = newStart;
+        this.newLines = newLines;
+        this.offsets = offsets;
+        this.rowBase = rowBase;
+        this.positions = positions;
+        this.added = added;
+    }
+    
+    public static DiffIndex parse(String patch) {
+        if (patch == null || patch.isEmpty()) {
+            return EMPTY;
+        }
+        
+        int capacity = 8;
+        int[] oldStart = new int[capacity];
+        int[] oldLines = new int[capacity];
+        int[] newStart = new int[capacity];
+        int[] newLines = new int[capacity];
+        int[] offsets = new int[capacity];
+        int[] rowBase = new int[capacity];
+        int[] positions = new int[64];
+        BitSet added = new BitSet();
+        
+        int hunks = 0;
+        int rows = 0;
+        int position = -1;
+        int length = patch.length();
+        int lineStart = 0;
+        // Lines before the first hunk header (none in GitHub patches) are not part of the diff
+        while (lineStart < length) {
+            int lineEnd = patch.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = length;
+            }
+            char first = lineEnd > lineStart ? patch.charAt(lineStart) : ' ';
+            
+            if (first == '@' && patch.startsWith("@@", lineStart)) {
+                if (hunks == capacity) {
+                    capacity *= 2;
+                    oldStart = Arrays.copyOf(oldStart, capacity);
+                    oldLines = Arrays.copyOf(oldLines, capacity);
+                    newStart = Arrays.copyOf(newStart, capacity);
+                    newLines = Arrays.copyOf(newLines, capacity);
+                    offsets = Arrays.copyOf(offsets, capacity);
+                    rowBase = Arrays.copyOf(rowBase, capacity);
+                }
+                // "@@ -a,b +c,d @@": only the starts are taken from the header, counts come from the rows
+                int minus = indexOf(patch, '-', lineStart, lineEnd);
+                int plus = indexOf(patch, '+', lineStart, lineEnd);
+                oldStart[hunks] = minus >= 0 ? readInt(patch, minus + 1, lineEnd) : 0;
+                newStart[hunks] = plus >= 0 ? readInt(patch, plus + 1, lineEnd) : 0;
+                offsets[hunks] = lineStart;
+                rowBase[hunks] = rows;
+                hunks++;
+                position++;
+            } else if (hunks > 0 && first != '\\') {
+                position++;
+                if (first == '-') {
+                    oldLines[hunks - 1]++;
+                } else {
+                    // Added or context line; an empty line is a context line whose space was stripped
+                    if (rows == positions.length) {
+                        positions = Arrays.copyOf(positions, rows * 2);
+                    }
+                    positions[rows] = position;
+                    if (first == '+') {
+                        added.set(rows);
+                    } else {
+                        oldLines[hunks - 1]++;
+                    }
+                    newLines[hunks - 1]++;
+                    rows++;
+                }
+            } else if (hunks > 0) {
+                // "\ No newline at end of file" still counts as a diff position
+                position++;
+            }
+            lineStart = lineEnd + 1;
+        }
+        
+        if (hunks == 0) {
+            return new DiffIndex(patch, 0, new int[0], new int[0], new int[0], new int[0],
+                new int[0], new int[0], new int[0], added);
+        }
+        return new DiffIndex(patch, hunks, oldStart, oldLines, newStart, newLines, offsets, rowBase, positions, added);
+    }
+    
+    public int hunkCount() {
+        return hunks;
+    }
+    
+    public int oldStart(int hunk) {
+        return oldStart[hunk];
+    }
+    
+    public int oldLines(int hunk) {
+        return oldLines[hunk];
+    }
+    
+    public int newStart(int hunk) {
+        return newStart[hunk];
+    }
+    
+    public int newLines(int hunk) {
+        return newLines[hunk];
+    }
+    
+    /**
+     * The hunk whose new-side range contains {@code line}, or -1.
+     */
+    public int hunkAt(int line) {
+        int low = 0;
+        int high = hunks - 1;
+        int candidate = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (newStart[mid] <= line) {
+                candidate = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (candidate < 0 || line >= newStart[candidate] + newLines[candidate]) {
+            return -1;
+        }
+        return candidate;
+    }
+    
+    /**
+     * Whether a review comment can be attached to {@code line} of the new file, i.e. the line is
+     * an added or context line of the diff.
+     */
+    public boolean isCommentable(int line) {
+        return hunkAt(line) >= 0;
+    }
+    
+    public boolean isAdded(int line) {
+        int hunk = hunkAt(line);
+        return hunk >= 0 && added.get(rowBase[hunk] + line - newStart[hunk]);
+    }
+    
+    /**
+     * The GitHub diff position of {@code line} in the new file, or -1 if it is not in the diff.
+     */
+    public int position(int line) {
+        int hunk = hunkAt(line);
+        return hunk >= 0 ? positions[rowBase[hunk] + line - newStart[hunk]] : -1;
+    }
+    
+    public int addedLineCount() {
+        return added.cardinality();
+    }
+    
+    /**
+     * Offset of the hunk's header in the patch text.
+     */
+    public int hunkOffset(int hunk) {
+        return offsets[hunk];
+    }
+    
+    /**
+     * Offset just past the hunk (the next hunk's header, or the end of the patch).
+     */
+    public int hunkEnd(int hunk) {
+        return hunk + 1 < hunks ? offsets[hunk + 1] : patch.length();
+    }
+    
+    /**
+     * The patch text of hunks {@code from} (inclusive) to {@code to} (exclusive), headers included.
+     */
+    public String slice(int from, int to) {
+        if (from >= to) {
+            return "";
+        }
+        return patch.substring(offsets[from], hunkEnd(to - 1));
+    }
+    
+    private static int indexOf(String text, char c, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static int readInt(String text, int from, int end) {
+        int value = 0;
+        for (int i = from; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
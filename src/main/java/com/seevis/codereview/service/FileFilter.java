@@ -0,0 +1,115 @@
+package com.seevis.codereview.service;
+
+import com.seevis.codereview.model.CodeChange;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Decides which changed files of a PR are reviewed, for webhook and CLI/REST reviews alike.
+ * <p>
+ * The {@code code-review.filter.include} and {@code exclude} globs are compiled once into
+ * {@link GlobSet}s and matched case-insensitively. Per review, the repository's
+ * {@code .gitattributes} can mark files as generated or binary, and a file pattern (such as
+ * {@code ReviewOptions.filePattern}) can replace the include globs. Every file's outcome is
+ * counted in the {@code codereview.files} metric.
+ */
+@Service
+@Slf4j
+public class FileFilter {
+    
+    public enum Outcome {
+        REVIEW,
+        BINARY,
+        GENERATED,
+        EXCLUDED,
+        NOT_INCLUDED,
+        NO_PATCH,
+        TOO_LARGE
+    }
+    
+    @Autowired
+    private ReviewMetrics reviewMetrics;
+    
+    @Value("${code-review.filter.include:*.java,*.kt,*.js,*.ts,*.jsx,*.tsx,*.py,*.go,*.rs,*.cpp,*.c,*.cs,*.rb,*.php,*.swift,*.scala,*.gradle,*.xml,*.yml,*.yaml,*.properties}")
+    private String include;
+    
+    @Value("${code-review.filter.exclude:**/test/**,**/tests/**,**/generated/**,**/build/**,**/target/**,**/dist/**,**/node_modules/**,**/vendor/**,*.min.*,package-lock.json,yarn.lock,gradle.lock}")
+    private String exclude;
+    
+    @Value("${code-review.max-file-size-kb:500}")
+    private int maxFileSizeKb;
+    
+    private GlobSet includes;
+    private GlobSet excludes;
+    
+    @PostConstruct
+    public void initialize() {
+        includes = GlobSet.compile(include.toLowerCase(Locale.ROOT));
+        excludes = GlobSet.compile(exclude.toLowerCase(Locale.ROOT));
+    }
+    
+    /**
+     * Returns the changes to review, in their original order.
+     *
+     * @param filePattern comma-separated globs that replace the configured includes for this
+     *                    review, or null
+     */
+    public List<CodeChange> filter(List<CodeChange> changes, GitAttributes attributes, String filePattern) {
+        GlobSet reviewIncludes = filePattern == null || filePattern.isBlank()
+            ? includes
+            : GlobSet.compile(filePattern.toLowerCase(Locale.ROOT));
+        
+        int[] counts = new int[Outcome.values().length];
+        List<CodeChange> filesToReview = new ArrayList<>();
+        for (CodeChange change : changes) {
+            Outcome outcome = classify(change, attributes, reviewIncludes);
+            counts[outcome.ordinal()]++;
+            if (outcome == Outcome.REVIEW) {
+                filesToReview.add(change);
+            } else {
+                log.debug("Skipping file: {} ({})", change.getFileName(), outcome);
+            }
+        }
+        
+        for (Outcome outcome : Outcome.values()) {
+            reviewMetrics.countFiles(outcome.name().toLowerCase(Locale.ROOT), counts[outcome.ordinal()]);
+        }
+        return filesToReview;
+    }
+    
+    Outcome classify(CodeChange change, GitAttributes attributes, GlobSet reviewIncludes) {
+        String path = change.getFileName();
+        // .gitattributes patterns are case-sensitive like git; the configured globs are not
+        if (attributes.isBinary(path)) {
+            return Outcome.BINARY;
+        }
+        if (attributes.isGenerated(path)) {
+            return Outcome.GENERATED;
+        }
+        
+        String lowerPath = path.toLowerCase(Locale.ROOT);
+        if (excludes.matches(lowerPath)) {
+            return Outcome.EXCLUDED;
+        }
+        if (!reviewIncludes.matches(lowerPath)) {
+            return Outcome.NOT_INCLUDED;
+        }
+        
+        // Deleted and binary files have no patch; smaller large patches are split by PromptPacker
+        String patch = change.getPatch();
+        if (patch == null || patch.isEmpty()) {
+            return Outcome.NO_PATCH;
+        }
+        if (patch.length() > maxFileSizeKb * 1024) {
+            return Outcome.TOO_LARGE;
+        }
+        return Outcome.REVIEW;
+    }
+}
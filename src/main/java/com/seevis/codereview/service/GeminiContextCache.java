@@ -0,0 +1,160 @@
+package com.seevis.codereview.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads the part of the review prompt that is the same for every request of a PR (reviewer
+ * instructions plus the PR's title, description and branches) once as Gemini cached content, so
+ * per-file requests only carry their patch.
+ * <p>
+ * Gemini only caches content above a per-model minimum ({@link #minimumTokensFor}): 32,768 tokens
+ * for the 1.5 models, so with those only PRs with very long descriptions are cached, while the
+ * bare instructions (a few hundred tokens) are always sent inline. Smaller context, a failed
+ * upload or a disabled cache yield an empty result and the caller sends the text as a
+ * {@code systemInstruction} instead. {@code gemini.context-cache.min-tokens} overrides the
+ * minimum. Entries are keyed by model, API key and a hash of the text; concurrent lookups of the
+ * same context wait for a single upload, and a failed upload is not retried until its entry
+ * expires.
+ */
+@Service
+@Slf4j
+public class GeminiContextCache {
+    
+    private static final String CACHED_CONTENTS_URL = "/v1beta/cachedContents?key={apiKey}";
+    // Local entries expire this long before the server-side TTL, so a name is never used at the last moment
+    private static final long EXPIRY_MARGIN_SECONDS = 60;
+    
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    @Autowired
+    private WebClient geminiWebClient;
+    
+    @Autowired
+    private GeminiRateLimiter geminiRateLimiter;
+    
+    @Value("${gemini.context-cache.enabled:true}")
+    private boolean enabled;
+    
+    // 0 = the model's minimum
+    @Value("${gemini.context-cache.min-tokens:0}")
+    private int minTokens;
+    
+    @Value("${gemini.context-cache.ttl-seconds:900}")
+    private long ttlSeconds;
+    
+    /**
+     * The name of a cached content holding {@code context} as system instruction, or an empty
+     * optional if the context has to be sent inline.
+     */
+    public Mono<Optional<String>> lookup(String model, String apiKey, String context) {
+        if (!enabled || PromptPacker.estimateTokens(context) < minTokens(model)) {
+            return Mono.just(Optional.empty());
+        }
+        
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> entry.expiresAt() - now <= 0);
+        Entry entry = entries.computeIfAbsent(keyFor(model, apiKey, context), key -> {
+            long lifetime = Math.max(1, ttlSeconds - EXPIRY_MARGIN_SECONDS);
+            return new Entry(create(model, apiKey, context), now + TimeUnit.SECONDS.toNanos(lifetime));
+        });
+        return entry.name();
+    }
+    
+    /**
+     * Forgets the cached content for {@code context}, e.g. after Gemini rejected its name.
+     */
+    public void invalidate(String model, String apiKey, String context) {
+        entries.remove(keyFor(model, apiKey, context));
+    }
+    
+    int minTokens(String model) {
+        return minTokens > 0 ? minTokens : minimumTokensFor(model);
+    }
+    
+    /**
+     * The smallest context {@code model} accepts as cached content. Models not listed get the
+     * largest minimum, so an upload is never attempted for context the API would reject.
+     */
+    static int minimumTokensFor(String model) {
+        if (model.startsWith("gemini-2.5-flash")) {
+            return 1024;
+        }
+        if (model.startsWith("gemini-2.5-pro")) {
+            return 4096;
+        }
+        return 32_768;
+    }
+    
+    /**
+     * Whether a request that referenced cached content failed in a way that sending the context
+     * inline may fix (the content expired, was deleted or is not usable with this request).
+     */
+    public static boolean isRejected(Throwable e) {
+        if (e instanceof WebClientResponseException response) {
+            int status = response.getStatusCode().value();
+            return status == 400 || status == 403 || status == 404;
+        }
+        return false;
+    }
+    
+    private Mono<Optional<String>> create(String model, String apiKey, String context) {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("model", "models/" + model);
+        body.putObject("systemInstruction").putArray("parts").addObject().put("text", context);
+        body.put("ttl", ttlSeconds + "s");
+        
+        return geminiRateLimiter.execute(model, apiKey, () -> geminiWebClient.post()
+                .uri(CACHED_CONTENTS_URL, apiKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body.toString())
+                .retrieve()
+                .bodyToMono(JsonNode.class))
+            .map(response -> {
+                String name = response.path("name").asText("");
+                log.info("🗄️ Cached review context as {} (~{} tokens)", name, PromptPacker.estimateTokens(context));
+                return name.isEmpty() ? Optional.<String>empty() : Optional.of(name);
+            })
+            .onErrorResume(e -> {
+                log.warn("Could not cache review context, sending it with every request: {}", e.getMessage());
+                return Mono.just(Optional.empty());
+            })
+            .cache();
+    }
+    
+    private static String keyFor(String model, String apiKey, String context) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(apiKey.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(context.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    private record Entry(Mono<Optional<String>> name, long expiresAt) {
+    }
+}
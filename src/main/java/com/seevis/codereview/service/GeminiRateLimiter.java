@@ -0,0 +1,231 @@
+package com.seevis.codereview.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Client-side pacing, retries and circuit breaking for Gemini calls, per (model, API key).
+ * <p>
+ * Calls are spaced by a token bucket whose rate adapts additively upwards on success and halves
+ * on a 429, so it settles just under the quota instead of alternating between bursts and
+ * failures. A {@code Retry-After} header (or Gemini's {@code retryDelay}) pauses the whole key.
+ * Throttled, 5xx and network failures are retried with jittered exponential backoff; every
+ * attempt goes through the bucket again. After {@code gemini.circuit-breaker.failure-threshold}
+ * consecutive server or network failures the key's circuit opens and calls fail fast until a
+ * single probe succeeds.
+ */
+@Service
+@Slf4j
+public class GeminiRateLimiter {
+    
+    private static final Pattern RETRY_DELAY = Pattern.compile("\"retryDelay\"\\s*:\\s*\"(\\d+(?:\\.\\d+)?)s\"");
+    
+    private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+    
+    @Value("${gemini.rate-limit.initial-rps:5}")
+    private double initialRps;
+    
+    @Value("${gemini.rate-limit.min-rps:0.2}")
+    private double minRps;
+    
+    @Value("${gemini.rate-limit.max-rps:50}")
+    private double maxRps;
+    
+    @Value("${gemini.rate-limit.burst:5}")
+    private int burst;
+    
+    // Rate gained per second of uninterrupted success
+    @Value("${gemini.rate-limit.increase-rps:0.5}")
+    private double increaseRps;
+    
+    @Value("${gemini.retry.max-attempts:4}")
+    private int maxAttempts;
+    
+    @Value("${gemini.retry.min-backoff-ms:500}")
+    private long minBackoffMs;
+    
+    @Value("${gemini.retry.max-backoff-seconds:30}")
+    private long maxBackoffSeconds;
+    
+    @Value("${gemini.circuit-breaker.failure-threshold:5}")
+    private int failureThreshold;
+    
+    @Value("${gemini.circuit-breaker.open-seconds:30}")
+    private long openSeconds;
+    
+    /**
+     * Runs {@code call} once a slot is available, retrying retryable failures.
+     */
+    public <T> Mono<T> execute(String model, String apiKey, Supplier<Mono<T>> call) {
+        Limiter limiter = limiters.computeIfAbsent(keyFor(model, apiKey), Limiter::new);
+        return Mono.defer(limiter::acquire)
+            .then(Mono.defer(call))
+            .doOnSuccess(value -> limiter.onSuccess())
+            .doOnError(limiter::onError)
+            .doOnCancel(limiter::onCancel)
+            .retryWhen(Retry.backoff(Math.max(0, maxAttempts - 1), Duration.ofMillis(minBackoffMs))
+                .maxBackoff(Duration.ofSeconds(maxBackoffSeconds))
+                .jitter(0.5)
+                .filter(GeminiRateLimiter::isRetryable)
+                .doBeforeRetry(signal -> log.warn("Retrying Gemini call (attempt {}): {}",
+                    signal.totalRetries() + 2, signal.failure().getMessage()))
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+    
+    static boolean isRetryable(Throwable e) {
+        if (e instanceof WebClientResponseException response) {
+            return isThrottled(response) || response.getStatusCode().is5xxServerError();
+        }
+        return e instanceof WebClientRequestException || e instanceof TimeoutException;
+    }
+    
+    private static boolean isThrottled(WebClientResponseException e) {
+        return e.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+    
+    // How long the server asked us to wait, from Retry-After or the RetryInfo detail in the body
+    static long retryAfterNanos(WebClientResponseException e) {
+        String header = e.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        if (header != null) {
+            try {
+                return TimeUnit.SECONDS.toNanos(Long.parseLong(header.trim()));
+            } catch (NumberFormatException ignored) {
+                // HTTP-date form is not used by Gemini
+            }
+        }
+        Matcher matcher = RETRY_DELAY.matcher(e.getResponseBodyAsString(StandardCharsets.UTF_8));
+        if (matcher.find()) {
+            return (long) (Double.parseDouble(matcher.group(1)) * 1_000_000_000L);
+        }
+        return 0;
+    }
+    
+    // The API key itself is never kept, only a short digest of it
+    private static String keyFor(String model, String apiKey) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest(String.valueOf(apiKey).getBytes(StandardCharsets.UTF_8));
+            return model + "/" + HexFormat.of().formatHex(digest, 0, 6);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    private final class Limiter {
+        
+        private final String name;
+        private double rate = initialRps;
+        // Token bucket as a virtual schedule: the time at which the bucket would be empty again
+        private long theoreticalArrival;
+        private long blockedUntil;
+        private long lastDecrease;
+        private int consecutiveFailures;
+        private long openUntil;
+        private boolean probeInFlight;
+        
+        Limiter(String name) {
+            this.name = name;
+            long now = System.nanoTime();
+            this.theoreticalArrival = now;
+            this.blockedUntil = now;
+            this.lastDecrease = now - TimeUnit.SECONDS.toNanos(60);
+        }
+        
+        Mono<Void> acquire() {
+            long delay = reserve();
+            return delay > 0 ? Mono.delay(Duration.ofNanos(delay)).then() : Mono.empty();
+        }
+        
+        private synchronized long reserve() {
+            long now = System.nanoTime();
+            if (consecutiveFailures >= failureThreshold) {
+                if (now - openUntil < 0 || probeInFlight) {
+                    throw new CircuitOpenException("Gemini circuit open for " + name);
+                }
+                // Half-open: let one probe through
+                probeInFlight = true;
+            }
+            
+            long interval = (long) (1_000_000_000L / rate);
+            long tolerance = interval * (Math.max(1, burst) - 1);
+            long base = Math.max(theoreticalArrival, now);
+            long start = Math.max(base - tolerance, now);
+            if (blockedUntil - start > 0) {
+                start = blockedUntil;
+            }
+            theoreticalArrival = Math.max(base, start) + interval;
+            return start - now;
+        }
+        
+        synchronized void onSuccess() {
+            if (consecutiveFailures >= failureThreshold) {
+                log.info("Gemini circuit closed for {}", name);
+            }
+            consecutiveFailures = 0;
+            probeInFlight = false;
+            rate = Math.min(maxRps, rate + increaseRps / rate);
+        }
+        
+        synchronized void onError(Throwable e) {
+            if (e instanceof CircuitOpenException) {
+                return;
+            }
+            probeInFlight = false;
+            long now = System.nanoTime();
+            if (e instanceof WebClientResponseException response && isThrottled(response)) {
+                long retryAfter = retryAfterNanos(response);
+                if (retryAfter > 0 && now + retryAfter - blockedUntil > 0) {
+                    blockedUntil = now + retryAfter;
+                }
+                // Several in-flight calls see the same 429; back off once per interval
+                if (now - lastDecrease > (long) (1_000_000_000L / rate)) {
+                    rate = Math.max(minRps, rate / 2);
+                    lastDecrease = now;
+                    log.warn("⏳ Gemini throttled {}: rate lowered to {} req/s{}", name, String.format("%.2f", rate),
+                        retryAfter > 0 ? ", pausing " + TimeUnit.NANOSECONDS.toMillis(retryAfter) + " ms" : "");
+                }
+                return;
+            }
+            if (isRetryable(e)) {
+                consecutiveFailures++;
+                if (consecutiveFailures >= failureThreshold) {
+                    openUntil = now + TimeUnit.SECONDS.toNanos(openSeconds);
+                    log.error("🔌 Gemini circuit opened for {} after {} consecutive failures",
+                        name, consecutiveFailures);
+                }
+            }
+        }
+        
+        synchronized void onCancel() {
+            probeInFlight = false;
+        }
+    }
+    
+    static final class CircuitOpenException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+        
+        CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.seevis.codereview.service;
+
+import org.kohsuke.github.GHContent;
+import org.kohsuke.github.GHFileNotFoundException;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GitHub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.seevis.codereview.service.GitHubCallScheduler.Priority.NORMAL;
+
+/**
+ * The review-relevant markers of a repository's {@code .gitattributes}: {@code linguist-generated}
+ * and {@code binary} (or {@code -diff}). As in git, the last line matching a path decides each
+ * attribute, and a marker can be unset again with {@code -attr}, {@code !attr} or {@code attr=false}.
+ */
+public final class GitAttributes {
+    
+    private static final GitAttributes NONE = new GitAttributes(List.of());
+    
+    private final List<Rule> rules;
+    
+    private GitAttributes(List<Rule> rules) {
+        this.rules = rules;
+    }
+    
+    public static GitAttributes none() {
+        return NONE;
+    }
+    
+    /**
+     * Reads the repository's root {@code .gitattributes} at {@code ref}; a repository without one
+     * has no markers.
+     */
+    public static GitAttributes fetch(GitHubCallScheduler scheduler, GitHub github, GHRepository repository,
+                                      String ref) throws IOException {
+        try {
+            GHContent content = scheduler.call(github, NORMAL, () -> repository.getFileContent(".gitattributes", ref));
+            try (InputStream in = content.read()) {
+                return parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        } catch (GHFileNotFoundException e) {
+            return NONE;
+        }
+    }
+    
+    public static GitAttributes parse(String text) {
+        if (text == null || text.isBlank()) {
+            return NONE;
+        }
+        
+        List<Rule> rules = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens.length < 2 || tokens[0].startsWith("#") || tokens[0].startsWith("[attr]")) {
+                continue;
+            }
+            Boolean generated = null;
+            Boolean binary = null;
+            for (int i = 1; i < tokens.length; i++) {
+                String token = tokens[i];
+                boolean unset = token.startsWith("-") || token.startsWith("!") || token.endsWith("=false");
+                String name = token.replaceFirst("^[-!]", "").replaceFirst("=.*$", "");
+                switch (name) {
+                    case "linguist-generated" -> generated = !unset;
+                    case "binary" -> binary = !unset;
+                    // -diff: git shows no textual diff for the file
+                    case "diff" -> binary = unset;
+                    default -> {
+                        // not relevant for reviews
+                    }
+                }
+            }
+            if (generated != null || binary != null) {
+                rules.add(new Rule(GlobSet.compile(List.of(tokens[0])), generated, binary));
+            }
+        }
+        return rules.isEmpty() ? NONE : new GitAttributes(rules);
+    }
+    
+    public boolean isGenerated(String path) {
+        for (int i = rules.size() - 1; i >= 0; i--) {
+            Rule rule = rules.get(i);
+            if (rule.generated() != null && rule.glob().matches(path)) {
+                return rule.generated();
+            }
+        }
+        return false;
+    }
+    
+    public boolean isBinary(String path) {
+        for (int i = rules.size() - 1; i >= 0; i--) {
+            Rule rule = rules.get(i);
+            if (rule.binary() != null && rule.glob().matches(path)) {
+                return rule.binary();
+            }
+        }
+        return false;
+    }
+    
+    private record Rule(GlobSet glob, Boolean generated, Boolean binary) {
+    }
+}
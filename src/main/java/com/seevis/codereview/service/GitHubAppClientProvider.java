@@ -0,0 +1,273 @@
+package com.seevis.codereview.service;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import lombok.extern.slf4j.Slf4j;
+import org.kohsuke.github.GHAppInstallation;
+import org.kohsuke.github.GHAppInstallationToken;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.GitHubBuilder;
+import org.kohsuke.github.connector.GitHubConnector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out GitHub clients authenticated as a GitHub App installation.
+ * <p>
+ * The App private key is parsed once at startup. Installation tokens (valid for an hour) are
+ * cached per installation together with their client and re-minted once they are within
+ * {@code github.app.token-refresh-seconds} of expiry. Minting is single-flight: concurrent
+ * webhooks for the same installation wait for one token request, and while a still-valid token
+ * is being refreshed other callers keep using it. App-level calls share one client whose JWT is
+ * reused until shortly before it expires. Clients of installations that made no call for
+ * {@code github.clients.idle-evict-seconds} are dropped, so a deployment serving many
+ * installations only keeps the active ones.
+ */
+@Service
+@Slf4j
+public class GitHubAppClientProvider {
+    
+    // PKCS#8 prefix (version + rsaEncryption AlgorithmIdentifier) for wrapping PKCS#1 keys
+    private static final byte[] RSA_ALGORITHM_IDENTIFIER = {
+        0x02, 0x01, 0x00,
+        0x30, 0x0D, 0x06, 0x09, 0x2A, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xF7, 0x0D, 0x01, 0x01, 0x01, 0x05, 0x00
+    };
+    
+    private final Map<Long, InstallationClient> clients = new ConcurrentHashMap<>();
+    private final Map<Long, CompletableFuture<InstallationClient>> minting = new ConcurrentHashMap<>();
+    
+    private Algorithm jwtAlgorithm;
+    private volatile AppClient appClient;
+    
+    @Autowired
+    private GitHubConnector gitHubConnector;
+    
+    @Value("${github.api-url:https://api.github.com}")
+    private String githubApiUrl;
+    
+    @Value("${github.app.id:}")
+    private String appId;
+    
+    @Value("${github.app.private-key-path:}")
+    private String privateKeyPath;
+    
+    @Value("${github.app.token-refresh-seconds:300}")
+    private long tokenRefreshSeconds;
+    
+    @Value("${github.clients.idle-evict-seconds:900}")
+    private long idleEvictSeconds;
+    
+    @PostConstruct
+    public void initialize() {
+        if (appId == null || appId.isEmpty() || privateKeyPath == null || privateKeyPath.isEmpty()) {
+            log.info("GitHub App credentials not configured, installation tokens disabled");
+            return;
+        }
+        
+        try {
+            String pem = Files.readString(Paths.get(privateKeyPath));
+            this.jwtAlgorithm = Algorithm.RSA256(null, parsePrivateKey(pem));
+            log.info("🔐 GitHub App {} private key loaded", appId);
+        } catch (IOException | GeneralSecurityException | IllegalArgumentException e) {
+            log.error("Could not load GitHub App private key from {}: {}", privateKeyPath, e.getMessage());
+        }
+    }
+    
+    public boolean isConfigured() {
+        return jwtAlgorithm != null;
+    }
+    
+    public GitHub getInstallationClient(long installationId) throws IOException {
+        if (!isConfigured()) {
+            throw new IOException("GitHub App authentication is not configured");
+        }
+        
+        Instant now = Instant.now();
+        InstallationClient current = clients.get(installationId);
+        if (current != null && current.isFresh(now, tokenRefreshSeconds)) {
+            current.lastUsed().set(now.toEpochMilli());
+            return current.github();
+        }
+        
+        CompletableFuture<InstallationClient> mine = new CompletableFuture<>();
+        CompletableFuture<InstallationClient> inProgress = minting.putIfAbsent(installationId, mine);
+        if (inProgress == null) {
+            try {
+                // Another thread may have finished minting since the first lookup
+                InstallationClient latest = clients.get(installationId);
+                if (latest != null && latest.isFresh(now, tokenRefreshSeconds)) {
+                    latest.lastUsed().set(now.toEpochMilli());
+                    mine.complete(latest);
+                    return latest.github();
+                }
+                
+                InstallationClient minted = mint(installationId);
+                long idleSince = now.toEpochMilli() - idleEvictSeconds * 1000;
+                clients.values().removeIf(client -> client.lastUsed().get() < idleSince);
+                clients.put(installationId, minted);
+                mine.complete(minted);
+                return minted.github();
+            } catch (IOException | RuntimeException e) {
+                mine.completeExceptionally(e);
+                throw e;
+            } finally {
+                minting.remove(installationId, mine);
+            }
+        }
+        
+        // Another thread is refreshing; an unexpired token is still good to use meanwhile
+        if (current != null && current.expiresAt().isAfter(now)) {
+            return current.github();
+        }
+        
+        try {
+            return inProgress.join().github();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Could not create installation token: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+    
+    /**
+     * The installation of this App on {@code repository} ({@code owner/name}).
+     */
+    public long getInstallationId(String repository) throws IOException {
+        if (!isConfigured()) {
+            throw new IOException("GitHub App authentication is not configured");
+        }
+        
+        int slash = repository.indexOf('/');
+        GHAppInstallation installation = appClient().getApp()
+            .getInstallationByRepository(repository.substring(0, slash), repository.substring(slash + 1));
+        return installation.getId();
+    }
+    
+    private GitHub appClient() throws IOException {
+        Instant now = Instant.now();
+        AppClient current = appClient;
+        if (current != null && current.isFresh(now)) {
+            return current.github();
+        }
+        
+        synchronized (this) {
+            current = appClient;
+            if (current != null && current.isFresh(now)) {
+                return current.github();
+            }
+            
+            Instant expiresAt = now.plus(Duration.ofMinutes(9));
+            String jwt = JWT.create()
+                .withIssuer(appId)
+                .withIssuedAt(Date.from(now.minusSeconds(60))) // allow for clock drift
+                .withExpiresAt(Date.from(expiresAt))
+                .sign(jwtAlgorithm);
+            
+            GitHub github = new GitHubBuilder()
+                .withEndpoint(githubApiUrl)
+                .withJwtToken(jwt)
+                .withConnector(gitHubConnector)
+                .build();
+            appClient = new AppClient(github, expiresAt);
+            return github;
+        }
+    }
+    
+    private InstallationClient mint(long installationId) throws IOException {
+        Instant now = Instant.now();
+        GHAppInstallationToken token = appClient().getApp()
+            .getInstallationById(installationId)
+            .createToken()
+            .create();
+        
+        GitHub installationClient = new GitHubBuilder()
+            .withEndpoint(githubApiUrl)
+            .withAppInstallationToken(token.getToken())
+            .withConnector(gitHubConnector)
+            .build();
+        
+        Instant expiresAt = token.getExpiresAt() != null
+            ? token.getExpiresAt().toInstant()
+            : now.plus(Duration.ofHours(1));
+        log.info("🔑 Minted installation token for {} (expires {})", installationId, expiresAt);
+        return new InstallationClient(installationClient, expiresAt, new AtomicLong(now.toEpochMilli()));
+    }
+    
+    static RSAPrivateKey parsePrivateKey(String pem) throws GeneralSecurityException {
+        boolean pkcs1 = pem.contains("BEGIN RSA PRIVATE KEY");
+        String base64 = pem.replaceAll("-----[A-Z ]+-----", "").replaceAll("\\s", "");
+        byte[] der = Base64.getDecoder().decode(base64);
+        
+        // GitHub issues PKCS#1 keys; the JDK only reads PKCS#8
+        if (pkcs1) {
+            der = wrapPkcs1(der);
+        }
+        return (RSAPrivateKey) KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(der));
+    }
+    
+    private static byte[] wrapPkcs1(byte[] pkcs1) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.writeBytes(RSA_ALGORITHM_IDENTIFIER);
+        body.write(0x04); // OCTET STRING
+        writeLength(body, pkcs1.length);
+        body.writeBytes(pkcs1);
+        
+        ByteArrayOutputStream sequence = new ByteArrayOutputStream();
+        sequence.write(0x30); // SEQUENCE
+        writeLength(sequence, body.size());
+        sequence.writeBytes(body.toByteArray());
+        return sequence.toByteArray();
+    }
+    
+    private static void writeLength(ByteArrayOutputStream out, int length) {
+        if (length < 0x80) {
+            out.write(length);
+        } else if (length <= 0xFF) {
+            out.write(0x81);
+            out.write(length);
+        } else if (length <= 0xFFFF) {
+            out.write(0x82);
+            out.write(length >> 8);
+            out.write(length);
+        } else {
+            out.write(0x83);
+            out.write(length >> 16);
+            out.write(length >> 8);
+            out.write(length);
+        }
+    }
+    
+    private record AppClient(GitHub github, Instant expiresAt) {
+        boolean isFresh(Instant now) {
+            // Leave a minute for the request in flight
+            return expiresAt.minusSeconds(60).isAfter(now);
+        }
+    }
+    
+    private record InstallationClient(GitHub github, Instant expiresAt, AtomicLong lastUsed) {
+        boolean isFresh(Instant now, long refreshSeconds) {
+            return expiresAt.minusSeconds(refreshSeconds).isAfter(now);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.seevis.codereview.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.kohsuke.github.GHRateLimit;
+import org.kohsuke.github.GitHub;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Gates GitHub calls on the quota reported in the {@code X-RateLimit-*} headers of the client's
+ * last response ({@link GitHub#rateLimit()}), so checking costs no request; {@code /rate_limit}
+ * is only queried once that record has expired, i.e. at most once per rate limit window.
+ * <p>
+ * Budgets are tracked per client, i.e. per installation token or PAT. While plenty of quota is
+ * left calls pass straight through. Below {@code github.rate-limit.pace-below-fraction} of the
+ * limit, calls are spaced so the remaining quota lasts until the reset. Each priority keeps a
+ * reserve: label toggles are refused first, then reads, so the last requests go to posting
+ * review results. A refused call throws {@link GitHubRateLimitedException}, which defers a
+ * webhook review job until the reset instead of failing it.
+ */
+@Service
+@Slf4j
+public class GitHubCallScheduler {
+    
+    public enum Priority {
+        /** Posting review results */
+        HIGH,
+        /** Reading PRs, files and comparisons */
+        NORMAL,
+        /** Informational calls such as label toggles */
+        LOW
+    }
+    
+    @FunctionalInterface
+    public interface GitHubCall<T> {
+        T call() throws IOException;
+    }
+    
+    @FunctionalInterface
+    public interface GitHubAction {
+        void run() throws IOException;
+    }
+    
+    // Weak keys: installation clients are replaced when their token is renewed
+    private final Map<GitHub, Budget> budgets = Collections.synchronizedMap(new WeakHashMap<>());
+    
+    @Value("${github.rate-limit.pace-below-fraction:0.2}")
+    private double paceBelowFraction;
+    
+    @Value("${github.rate-limit.normal-reserve:50}")
+    private int normalReserve;
+    
+    @Value("${github.rate-limit.low-reserve:500}")
+    private int lowReserve;
+    
+    @Value("${github.rate-limit.max-pace-wait-seconds:10}")
+    private long maxPaceWaitSeconds;
+    
+    public <T> T call(GitHub github, Priority priority, GitHubCall<T> call) throws IOException {
+        awaitTurn(github, priority);
+        return call.call();
+    }
+    
+    public void run(GitHub github, Priority priority, GitHubAction action) throws IOException {
+        awaitTurn(github, priority);
+        action.run();
+    }
+    
+    // rateLimit() is deprecated in favour of getRateLimit(), which queries /rate_limit on every call
+    @SuppressWarnings("deprecation")
+    private void awaitTurn(GitHub github, Priority priority) throws IOException {
+        GHRateLimit.Record core = github.rateLimit().getCore();
+        long now = System.currentTimeMillis();
+        long resetAt = core.getResetEpochSeconds() * 1000;
+        if (resetAt <= now) {
+            // The recorded window has already reset
+            return;
+        }
+        
+        int remaining = core.getRemaining();
+        int reserve = reserveFor(priority);
+        if (remaining <= reserve) {
+            throw new GitHubRateLimitedException(String.format(
+                "GitHub quota low (%d of %d left), %s priority call refused until reset",
+                remaining, core.getLimit(), priority), Instant.ofEpochMilli(resetAt));
+        }
+        if (remaining >= core.getLimit() * paceBelowFraction) {
+            return;
+        }
+        
+        // Spread what is left above the reserve evenly over the rest of the window
+        long interval = (resetAt - now) / (remaining - reserve);
+        long wait;
+        Budget budget = budgets.computeIfAbsent(github, client -> new Budget());
+        synchronized (budget) {
+            long start = Math.max(now, budget.nextCallAt);
+            wait = start - now;
+            if (wait > maxPaceWaitSeconds * 1000) {
+                throw new GitHubRateLimitedException(String.format(
+                    "GitHub quota low (%d of %d left), next %s priority slot in %d ms",
+                    remaining, core.getLimit(), priority, wait), Instant.ofEpochMilli(resetAt));
+            }
+            budget.nextCallAt = start + interval;
+        }
+        
+        if (wait > 0) {
+            log.debug("Pacing GitHub call by {} ms ({} of {} left)", wait, remaining, core.getLimit());
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while pacing GitHub call");
+            }
+        }
+    }
+    
+    private int reserveFor(Priority priority) {
+        return switch (priority) {
+            case HIGH -> 0;
+            case NORMAL -> normalReserve;
+            case LOW -> lowReserve;
+        };
+    }
+    
+    private static final class Budget {
+        private long nextCallAt;
+    }
+}
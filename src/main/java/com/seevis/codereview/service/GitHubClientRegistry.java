@@ -0,0 +1,156 @@
+package com.seevis.codereview.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.GitHubBuilder;
+import org.kohsuke.github.connector.GitHubConnector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out GitHub clients for any repository or App installation, so one deployment can review
+ * PRs of many repositories concurrently.
+ * <p>
+ * With GitHub App credentials a repository is served by the client of the installation covering
+ * it ({@link GitHubAppClientProvider} pools those per installation and renews their tokens); the
+ * repository's installation is looked up once and remembered until the repository has been idle
+ * for {@code github.clients.idle-evict-seconds}. Otherwise, or if the App lookup fails, all
+ * repositories share one client for {@code GITHUB_TOKEN}. A failed lookup is remembered as well
+ * and only retried after the same period, so repositories without the App do not cost an App API
+ * call per request. Clients are created lazily on first use.
+ */
+@Service
+@Slf4j
+public class GitHubClientRegistry {
+    
+    // Remembered for repositories the App is not installed on
+    private static final long NO_INSTALLATION = -1;
+    
+    private final Map<String, RepositoryInstallation> installations = new ConcurrentHashMap<>();
+    private volatile GitHub tokenClient;
+    
+    @Autowired
+    private GitHubAppClientProvider gitHubAppClientProvider;
+    
+    @Autowired
+    private GitHubConnector gitHubConnector;
+    
+    @Value("${github.api-url:https://api.github.com}")
+    private String githubApiUrl;
+    
+    @Value("${GITHUB_TOKEN:}")
+    private String githubToken;
+    
+    @Value("${github.clients.idle-evict-seconds:900}")
+    private long idleEvictSeconds;
+    
+    /**
+     * Whether any GitHub credentials are configured; without them callers run in mock mode.
+     */
+    public boolean isConfigured() {
+        return gitHubAppClientProvider.isConfigured() || hasToken();
+    }
+    
+    /**
+     * The client for a webhook delivery: the App installation it came from, or the token client.
+     */
+    public GitHub forInstallation(String installationId) throws IOException {
+        if (gitHubAppClientProvider.isConfigured() && installationId != null && !installationId.isEmpty()) {
+            try {
+                return gitHubAppClientProvider.getInstallationClient(Long.parseLong(installationId));
+            } catch (Exception e) {
+                log.warn("GitHub App authentication failed, falling back to PAT: {}", e.getMessage());
+            }
+        }
+        return tokenClient();
+    }
+    
+    /**
+     * The client for {@code repository} ({@code owner/name}): the installation of the App on that
+     * repository, or the token client.
+     */
+    public GitHub forRepository(String repository) throws IOException {
+        if (gitHubAppClientProvider.isConfigured()) {
+            try {
+                long installationId = installationId(repository);
+                if (installationId != NO_INSTALLATION) {
+                    return gitHubAppClientProvider.getInstallationClient(installationId);
+                }
+            } catch (Exception e) {
+                log.warn("No GitHub App installation usable for {}, falling back to PAT: {}", repository, e.getMessage());
+            }
+        }
+        return tokenClient();
+    }
+    
+    private long installationId(String repository) {
+        long now = System.currentTimeMillis();
+        long idleSince = now - idleEvictSeconds * 1000;
+        RepositoryInstallation known = installations.get(repository);
+        if (known != null && known.installationId != NO_INSTALLATION) {
+            known.lastUsed = now;
+            return known.installationId;
+        }
+        // A miss is not refreshed by use, so it expires and is retried like an idle entry
+        if (known != null && known.lastUsed >= idleSince) {
+            return NO_INSTALLATION;
+        }
+        
+        installations.values().removeIf(entry -> entry.lastUsed < idleSince);
+        long installationId = NO_INSTALLATION;
+        try {
+            installationId = gitHubAppClientProvider.getInstallationId(repository);
+            log.info("🔗 {} is served by installation {}", repository, installationId);
+        } catch (IOException e) {
+            log.warn("No GitHub App installation usable for {}, using PAT for the next {}s: {}",
+                repository, idleEvictSeconds, e.getMessage());
+        }
+        installations.put(repository, new RepositoryInstallation(installationId, now));
+        return installationId;
+    }
+    
+    private GitHub tokenClient() throws IOException {
+        if (!hasToken()) {
+            throw new IOException("No GitHub authentication configured. " +
+                "Please set either GitHub App credentials or GITHUB_TOKEN");
+        }
+        
+        GitHub client = tokenClient;
+        if (client == null) {
+            synchronized (this) {
+                client = tokenClient;
+                if (client == null) {
+                    log.info("🔑 Using Personal Access Token authentication");
+                    client = new GitHubBuilder()
+                        .withEndpoint(githubApiUrl)
+                        .withOAuthToken(githubToken)
+                        .withConnector(gitHubConnector)
+                        .build();
+                    tokenClient = client;
+                }
+            }
+        }
+        return client;
+    }
+    
+    private boolean hasToken() {
+        // Placeholder from the sample configuration
+        return githubToken != null && !githubToken.isEmpty() && !githubToken.equals("your-token-here");
+    }
+    
+    private static final class RepositoryInstallation {
+        
+        private final long installationId;
+        private volatile long lastUsed;
+        
+        RepositoryInstallation(long installationId, long lastUsed) {
+            this.installationId = installationId;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
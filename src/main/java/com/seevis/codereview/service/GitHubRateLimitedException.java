@@ -0,0 +1,24 @@
+package com.seevis.codereview.service;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Thrown instead of issuing a GitHub call when the client's remaining quota is reserved for
+ * higher-priority calls or exhausted until {@link #getResetAt()}.
+ */
+public class GitHubRateLimitedException extends IOException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final Instant resetAt;
+    
+    public GitHubRateLimitedException(String message, Instant resetAt) {
+        super(message);
+        this.resetAt = resetAt;
+    }
+    
+    public Instant getResetAt() {
+        return resetAt;
+    }
+}
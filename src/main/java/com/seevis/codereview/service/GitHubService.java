@@ -5,24 +5,56 @@ import com.seevis.codereview.model.PullRequest;
 import com.seevis.codereview.model.ReviewComment;
 import lombok.extern.slf4j.Slf4j;
 import org.kohsuke.github.*;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 
 import jakarta.annotation.PostConstruct;
 import java.io.IOException;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static com.seevis.codereview.service.GitHubCallScheduler.Priority.HIGH;
+import static com.seevis.codereview.service.GitHubCallScheduler.Priority.LOW;
+import static com.seevis.codereview.service.GitHubCallScheduler.Priority.NORMAL;
+
+/**
+ * GitHub operations of the CLI and REST reviews, for any repository: clients come from the
+ * {@link GitHubClientRegistry}, and repository and PR handles are cached per repository until it
+ * has been idle for {@code github.clients.idle-evict-seconds}. {@code GITHUB_REPOSITORY} is only
+ * the default for callers that do not name a repository. Without credentials all calls are mocked.
+ */
 @Service
 @Slf4j
 public class GitHubService {
     
-    private GitHub github;
+    private boolean mock;
     private String repository;
+    private final Map<String, RepositoryHandles> repositoryHandles = new ConcurrentHashMap<>();
+    
+    @Autowired
+    private GitHubClientRegistry gitHubClientRegistry;
+    
+    @Autowired
+    private IncrementalChangeResolver incrementalChangeResolver;
+    
+    @Autowired
+    private GitHubCallScheduler gitHubCallScheduler;
+    
+    @Autowired
+    private ReviewPublisher reviewPublisher;
+    
+    @Autowired
+    private ChangedFileFetcher changedFileFetcher;
     
-    @Value("${GITHUB_TOKEN:}")
-    private String githubToken;
+    @Value("${github.handle-cache-ttl-seconds:60}")
+    private long handleCacheTtlSeconds;
+    
+    @Value("${github.clients.idle-evict-seconds:900}")
+    private long idleEvictSeconds;
     
     @Value("${GITHUB_REPOSITORY:}")
     private String repositoryName;
@@ -35,31 +67,28 @@ public class GitHubService {
         log.info("Initializing GitHub Service with auth type: {}", authType);
         
         // Allow dummy tokens for local development/testing with Swagger
-        if (githubToken == null || githubToken.isEmpty() || githubToken.equals("your-token-here")) {
+        if (!gitHubClientRegistry.isConfigured()) {
             log.warn("GITHUB_TOKEN is not properly configured. Using mock mode for testing.");
+            this.mock = true;
             this.repository = repositoryName != null && !repositoryName.isEmpty() ? repositoryName : "owner/repo";
             return;
         }
         
         if (repositoryName == null || repositoryName.isEmpty()) {
-            log.warn("GITHUB_REPOSITORY is not set, using default: owner/repo");
-            repositoryName = "owner/repo";
+            log.info("GITHUB_REPOSITORY is not set; repositories must be given per review");
+            return;
         }
         
         this.repository = repositoryName;
         
-        // GitHub 연결 초기화
-        this.github = new GitHubBuilder()
-            .withOAuthToken(githubToken)
-            .build();
-            
-        // 연결 테스트
+        // 기본 Repository 연결 테스트
         try {
+            GitHub github = gitHubClientRegistry.forRepository(repository);
             github.checkApiUrlValidity();
             log.info("✅ Successfully connected to GitHub");
             
             // Repository 접근 테스트
-            GHRepository repo = github.getRepository(repository);
+            GHRepository repo = handles(repository).repository();
             log.info("✅ Successfully accessed repository: {}", repo.getFullName());
         } catch (IOException e) {
             log.error("Failed to connect to GitHub: {}", e.getMessage());
@@ -67,10 +96,10 @@ public class GitHubService {
         }
     }
     
-    public PullRequest getPullRequest(int number) throws IOException {
-        log.debug("Fetching PR #{}", number);
+    public PullRequest getPullRequest(String repository, int number) throws IOException {
+        log.debug("Fetching PR {}#{}", repository, number);
         
-        if (github == null) {
+        if (mock) {
             // Mock response for testing
             return PullRequest.builder()
                 .number(number)
@@ -83,8 +112,8 @@ public class GitHubService {
                 .build();
         }
         
-        GHRepository repo = github.getRepository(repository);
-        GHPullRequest ghPr = repo.getPullRequest(number);
+        // Start of a review: always revalidate so the head SHA is current (a 304 costs no quota)
+        GHPullRequest ghPr = pullRequest(handles(repository), number, true);
         
         return PullRequest.builder()
             .number(number)
@@ -93,18 +122,38 @@ public class GitHubService {
             .author(ghPr.getUser().getLogin())
             .baseBranch(ghPr.getBase().getRef())
             .headBranch(ghPr.getHead().getRef())
+            .headSha(ghPr.getHead().getSha())
             .state(ghPr.getState().toString())
             .createdAt(ghPr.getCreatedAt())
             .updatedAt(ghPr.getUpdatedAt())
             .build();
     }
     
-    public List<CodeChange> getChangedFiles(int prNumber) throws IOException {
-        log.debug("Fetching changed files for PR #{}", prNumber);
+    /**
+     * The {@code .gitattributes} markers of the repository at {@code ref} (empty in mock mode).
+     */
+    public GitAttributes getGitAttributes(String repository, String ref) throws IOException {
+        if (mock || ref == null) {
+            return GitAttributes.none();
+        }
+        RepositoryHandles handles = handles(repository);
+        return GitAttributes.fetch(gitHubCallScheduler, handles.github(), handles.repository(), ref);
+    }
+    
+    public List<CodeChange> getChangedFiles(String repository, int prNumber) throws IOException {
+        return ChangedFileFetcher.await(streamChangedFiles(repository, prNumber).flatMapIterable(page -> page).collectList());
+    }
+    
+    /**
+     * The PR's changed files as they are fetched, one list per page (see {@link ChangedFileFetcher}).
+     * Failures, including looking up the PR, end the stream with an error.
+     */
+    public Flux<List<CodeChange>> streamChangedFiles(String repository, int prNumber) {
+        log.debug("Fetching changed files for PR {}#{}", repository, prNumber);
         
-        if (github == null) {
+        if (mock) {
             // Mock response for testing
-            return List.of(
+            return Flux.just(List.of(
                 CodeChange.builder()
                     .fileName("MockFile.java")
                     .status("modified")
@@ -113,106 +162,163 @@ public class GitHubService {
                     .changes(30)
                     .patch("@@ -1,10 +1,20 @@\n Mock patch content")
                     .build()
-            );
-        }
-        
-        GHRepository repo = github.getRepository(repository);
-        GHPullRequest pr = repo.getPullRequest(prNumber);
-        
-        return StreamSupport.stream(pr.listFiles().spliterator(), false)
-            .map(file -> {
-                try {
-                    return CodeChange.builder()
-                        .fileName(file.getFilename())
-                        .status(file.getStatus())
-                        .additions(file.getAdditions())
-                        .deletions(file.getDeletions())
-                        .changes(file.getChanges())
-                        .patch(file.getPatch())
-                        .rawUrl(file.getRawUrl() != null ? file.getRawUrl().toString() : null)
-                        .blobUrl(file.getBlobUrl() != null ? file.getBlobUrl().toString() : null)
-                        .build();
-                } catch (Exception e) {
-                    log.error("Error processing file: {}", file.getFilename(), e);
-                    return null;
-                }
-            })
-            .filter(change -> change != null)
-            .collect(Collectors.toList());
+            ));
+        }
+        
+        return Flux.defer(() -> {
+            try {
+                RepositoryHandles handles = handles(repository);
+                return changedFileFetcher.pages(handles.github(), pullRequest(handles, prNumber, false));
+            } catch (IOException e) {
+                return Flux.error(e);
+            }
+        });
+    }
+    
+    /**
+     * Returns only the changes pushed since {@code previousHeadSha}, falling back to
+     * {@code allChanges} (the full PR file list) when the range cannot be compared incrementally.
+     */
+    public List<CodeChange> getChangedFilesSince(String repository, List<CodeChange> allChanges,
+                                                 String previousHeadSha, String headSha) throws IOException {
+        if (mock) {
+            return allChanges;
+        }
+        
+        RepositoryHandles handles = handles(repository);
+        return gitHubCallScheduler.call(handles.github(), NORMAL, () ->
+                incrementalChangeResolver.resolve(handles.repository(), allChanges, previousHeadSha, headSha))
+            .orElse(allChanges);
+    }
+    
+    /**
+     * The default repository ({@code GITHUB_REPOSITORY}), or null if none is configured.
+     */
+    public String getRepository() {
+        return repository;
     }
     
-    public void postReview(int prNumber, List<ReviewComment> comments) throws IOException {
+    /**
+     * Posts {@code comments} as one review. {@code prFiles} are the PR's files with their full
+     * patches, as already fetched for the review; comment lines are mapped to diff positions in them.
+     */
+    public void postReview(String repository, int prNumber, List<CodeChange> prFiles,
+                           List<ReviewComment> comments) throws IOException {
         if (comments == null || comments.isEmpty()) {
             log.info("No comments to post for PR #{}", prNumber);
             return;
         }
         
-        if (github == null) {
+        if (mock) {
             log.info("Mock mode: Would post {} review comments to PR #{}", comments.size(), prNumber);
             return;
         }
         
-        log.info("Posting {} review comments to PR #{}", comments.size(), prNumber);
-        GHRepository repo = github.getRepository(repository);
-        GHPullRequest pr = repo.getPullRequest(prNumber);
+        log.info("Posting {} review comments to {} PR #{}", comments.size(), repository, prNumber);
+        RepositoryHandles handles = handles(repository);
+        GHPullRequest pr = pullRequest(handles, prNumber, false);
         
-        // Create review with comments
-        GHPullRequestReviewBuilder review = pr.createReview()
-            .body("🤖 **AI Code Review Complete**\n\n" +
-                  "I've analyzed your code and provided feedback below. " +
-                  "Please review the comments and make necessary adjustments.")
-            .event(GHPullRequestReviewEvent.COMMENT);
-        
-        for (ReviewComment comment : comments) {
-            if (comment.getLine() != null && comment.getLine() > 0) {
-                review.comment(comment.getBody(), comment.getPath(), comment.getLine());
-            }
-        }
-        
-        review.create();
+        // Lines are mapped against the full PR diff, also when only the latest push was reviewed
+        reviewPublisher.publish(handles.github(), pr, pr.getHead().getSha(), prFiles,
+            "🤖 **AI Code Review Complete**\n\n" +
+            "I've analyzed your code and provided feedback below. " +
+            "Please review the comments and make necessary adjustments.",
+            comments);
         log.info("✅ Successfully posted review to PR #{}", prNumber);
     }
     
-    public void postComment(int prNumber, String comment) throws IOException {
-        log.info("Posting comment to PR #{}", prNumber);
+    public void postComment(String repository, int prNumber, String comment) throws IOException {
+        log.info("Posting comment to {} PR #{}", repository, prNumber);
         
-        if (github == null) {
+        if (mock) {
             log.info("Mock mode: Would post comment to PR #{}: {}", prNumber, comment);
             return;
         }
         
-        GHRepository repo = github.getRepository(repository);
-        GHPullRequest pr = repo.getPullRequest(prNumber);
+        RepositoryHandles handles = handles(repository);
+        GHPullRequest pr = pullRequest(handles, prNumber, false);
         
-        pr.comment(comment);
+        gitHubCallScheduler.run(handles.github(), HIGH, () -> pr.comment(comment));
         log.info("✅ Successfully posted comment to PR #{}", prNumber);
     }
     
-    public void addLabel(int prNumber, String label) throws IOException {
-        log.info("Adding label '{}' to PR #{}", label, prNumber);
+    public void addLabel(String repository, int prNumber, String label) throws IOException {
+        log.info("Adding label '{}' to {} PR #{}", label, repository, prNumber);
         
-        if (github == null) {
+        if (mock) {
             log.info("Mock mode: Would add label '{}' to PR #{}", label, prNumber);
             return;
         }
         
-        GHRepository repo = github.getRepository(repository);
-        GHPullRequest pr = repo.getPullRequest(prNumber);
+        RepositoryHandles handles = handles(repository);
+        GHPullRequest pr = pullRequest(handles, prNumber, false);
         
-        pr.addLabels(label);
+        gitHubCallScheduler.run(handles.github(), LOW, () -> pr.addLabels(label));
     }
     
-    public void removeLabel(int prNumber, String label) throws IOException {
-        log.info("Removing label '{}' from PR #{}", label, prNumber);
+    public void removeLabel(String repository, int prNumber, String label) throws IOException {
+        log.info("Removing label '{}' from {} PR #{}", label, repository, prNumber);
         
-        if (github == null) {
+        if (mock) {
             log.info("Mock mode: Would remove label '{}' from PR #{}", label, prNumber);
             return;
         }
         
-        GHRepository repo = github.getRepository(repository);
-        GHPullRequest pr = repo.getPullRequest(prNumber);
+        RepositoryHandles handles = handles(repository);
+        GHPullRequest pr = pullRequest(handles, prNumber, false);
+        
+        gitHubCallScheduler.run(handles.github(), LOW, () -> pr.removeLabel(label));
+    }
+    
+    /**
+     * The repository's client and handle. The handle is refetched when the registry hands out a
+     * different client (e.g. after an installation token was renewed), since handles keep using
+     * the client they were fetched with.
+     */
+    private RepositoryHandles handles(String repository) throws IOException {
+        if (repository == null || repository.isEmpty()) {
+            throw new IOException("No repository given and GITHUB_REPOSITORY is not set");
+        }
         
-        pr.removeLabel(label);
+        long now = System.currentTimeMillis();
+        GitHub github = gitHubClientRegistry.forRepository(repository);
+        RepositoryHandles handles = repositoryHandles.get(repository);
+        if (handles == null || handles.github() != github) {
+            GHRepository repo = gitHubCallScheduler.call(github, NORMAL, () -> github.getRepository(repository));
+            handles = new RepositoryHandles(github, repo, new ConcurrentHashMap<>(), new AtomicLong(now));
+            long idleSince = now - idleEvictSeconds * 1000;
+            repositoryHandles.values().removeIf(entry -> entry.lastUsed().get() < idleSince);
+            repositoryHandles.put(repository, handles);
+        }
+        handles.lastUsed().set(now);
+        return handles;
+    }
+    
+    /**
+     * Returns a PR handle, reusing one fetched within {@code github.handle-cache-ttl-seconds}
+     * unless {@code refresh} is set.
+     */
+    private GHPullRequest pullRequest(RepositoryHandles handles, int number, boolean refresh) throws IOException {
+        long now = System.currentTimeMillis();
+        Map<Integer, CachedPullRequest> pullRequestHandles = handles.pullRequests();
+        CachedPullRequest cached = pullRequestHandles.get(number);
+        if (!refresh && cached != null && now - cached.fetchedAt() < handleCacheTtlSeconds * 1000) {
+            return cached.handle();
+        }
+        
+        GHRepository repo = handles.repository();
+        GHPullRequest handle = gitHubCallScheduler.call(handles.github(), NORMAL, () -> repo.getPullRequest(number));
+        pullRequestHandles.put(number, new CachedPullRequest(handle, now));
+        if (pullRequestHandles.size() > 100) {
+            pullRequestHandles.values().removeIf(entry -> now - entry.fetchedAt() >= handleCacheTtlSeconds * 1000);
+        }
+        return handle;
+    }
+    
+    private record RepositoryHandles(GitHub github, GHRepository repository,
+                                     Map<Integer, CachedPullRequest> pullRequests, AtomicLong lastUsed) {
+    }
+    
+    private record CachedPullRequest(GHPullRequest handle, long fetchedAt) {
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,228 @@
+package com.seevis.codereview.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A set of path globs compiled once into a single matcher.
+ * <p>
+ * Globs follow {@code .gitignore}/{@code .gitattributes} rules: a glob without a slash matches
+ * the file name at any depth, anything else is anchored at the repository root (a leading slash
+ * is ignored). {@code *} and {@code ?} stay within one path segment, {@code **} spans segments.
+ * <p>
+ * The common shapes never reach a regex: {@code *.ext} and {@code *.min.js} land in a trie of
+ * reversed suffixes walked once from the end of the name, plain names and paths in hash sets,
+ * {@code dir/**} in a prefix list and {@code **&#47;dir/**} in a list of directory markers. Only
+ * the remaining globs are compiled to regular expressions.
+ */
+public final class GlobSet {
+    
+    private static final GlobSet EMPTY = compile(List.of());
+    
+    private final SuffixNode suffixes = new SuffixNode();
+    private final Set<String> names = new HashSet<>();
+    private final Set<String> paths = new HashSet<>();
+    private final List<String> prefixes = new ArrayList<>();
+    // "name/" and "/name/": a directory named name anywhere in the path
+    private final List<String> directories = new ArrayList<>();
+    private final List<Pattern> namePatterns = new ArrayList<>();
+    private final List<Pattern> pathPatterns = new ArrayList<>();
+    private final int size;
+    
+    private GlobSet(int size) {
+        this.size = size;
+    }
+    
+    public static GlobSet empty() {
+        return EMPTY;
+    }
+    
+    public static GlobSet compile(Iterable<String> globs) {
+        List<String> cleaned = new ArrayList<>();
+        for (String glob : globs) {
+            String trimmed = glob == null ? "" : glob.trim();
+            if (trimmed.startsWith("/")) {
+                trimmed = trimmed.substring(1);
+            }
+            if (!trimmed.isEmpty()) {
+                cleaned.add(trimmed);
+            }
+        }
+        
+        GlobSet set = new GlobSet(cleaned.size());
+        for (String glob : cleaned) {
+            set.add(glob);
+        }
+        return set;
+    }
+    
+    /**
+     * Compiles a comma-separated list of globs, e.g. {@code "*.java, src/main/**"}.
+     */
+    public static GlobSet compile(String globs) {
+        return globs == null || globs.isBlank() ? EMPTY : compile(Arrays.asList(globs.split(",")));
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public boolean matches(String path) {
+        int slash = path.lastIndexOf('/');
+        String name = slash < 0 ? path : path.substring(slash + 1);
+        
+        if (suffixes.matchesEnd(name) || names.contains(name) || paths.contains(path)) {
+            return true;
+        }
+        for (String prefix : prefixes) {
+            if (path.startsWith(prefix)) {
+                return true;
+            }
+        }
+        for (int i = 0; i < directories.size(); i += 2) {
+            if (path.startsWith(directories.get(i)) || path.contains(directories.get(i + 1))) {
+                return true;
+            }
+        }
+        for (Pattern pattern : namePatterns) {
+            if (pattern.matcher(name).matches()) {
+                return true;
+            }
+        }
+        for (Pattern pattern : pathPatterns) {
+            if (pattern.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void add(String glob) {
+        String nameGlob = glob.startsWith("**/") ? glob.substring(3) : glob;
+        if (nameGlob.indexOf('/') < 0) {
+            // Matches the file name at any depth
+            if (!hasWildcard(nameGlob)) {
+                names.add(nameGlob);
+            } else if (nameGlob.startsWith("*") && !hasWildcard(nameGlob.substring(1))) {
+                suffixes.add(nameGlob.substring(1));
+            } else {
+                namePatterns.add(toRegex(nameGlob));
+            }
+            return;
+        }
+        
+        if (glob.startsWith("**/") && nameGlob.endsWith("/**")) {
+            String directory = nameGlob.substring(0, nameGlob.length() - 3);
+            if (directory.indexOf('/') < 0 && !hasWildcard(directory)) {
+                directories.add(directory + "/");
+                directories.add("/" + directory + "/");
+                return;
+            }
+        }
+        if (glob.endsWith("/**") && !hasWildcard(glob.substring(0, glob.length() - 3))) {
+            prefixes.add(glob.substring(0, glob.length() - 2));
+        } else if (!hasWildcard(glob)) {
+            paths.add(glob);
+        } else {
+            pathPatterns.add(toRegex(glob));
+        }
+    }
+    
+    private static boolean hasWildcard(String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?' || c == '[') {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static Pattern toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i);
+            if (glob.startsWith("**/", i)) {
+                regex.append("(?:.*/)?");
+                i += 3;
+            } else if (glob.startsWith("**", i)) {
+                regex.append(".*");
+                i += 2;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+                i++;
+            } else if (c == '?') {
+                regex.append("[^/]");
+                i++;
+            } else if (c == '[') {
+                int end = glob.indexOf(']', i + 1);
+                if (end < 0) {
+                    regex.append("\\[");
+                    i++;
+                } else {
+                    String members = glob.substring(i + 1, end);
+                    regex.append('[').append(members.startsWith("!") ? "^" + members.substring(1) : members).append(']');
+                    i = end + 1;
+                }
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+                i++;
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+    
+    // Trie over suffixes read from their last character backwards
+    private static final class SuffixNode {
+        
+        private char[] keys = new char[0];
+        private SuffixNode[] children = new SuffixNode[0];
+        private boolean terminal;
+        
+        void add(String suffix) {
+            SuffixNode node = this;
+            for (int i = suffix.length() - 1; i >= 0; i--) {
+                node = node.child(suffix.charAt(i), true);
+            }
+            node.terminal = true;
+        }
+        
+        boolean matchesEnd(String name) {
+            if (terminal) {
+                return true;
+            }
+            SuffixNode node = this;
+            for (int i = name.length() - 1; i >= 0; i--) {
+                node = node.child(name.charAt(i), false);
+                if (node == null) {
+                    return false;
+                }
+                if (node.terminal) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        private SuffixNode child(char key, boolean create) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return children[i];
+                }
+            }
+            if (!create) {
+                return null;
+            }
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            keys[keys.length - 1] = key;
+            children[children.length - 1] = new SuffixNode();
+            return children[children.length - 1];
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.seevis.codereview.service;
+
+import com.seevis.codereview.model.CodeChange;
+import lombok.extern.slf4j.Slf4j;
+import org.kohsuke.github.GHCommit;
+import org.kohsuke.github.GHCompare;
+import org.kohsuke.github.GHRepository;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Narrows a pull request's changes down to the hunks pushed since a previously reviewed head.
+ */
+@Service
+@Slf4j
+public class IncrementalChangeResolver {
+    
+    // The compare API returns at most 300 files; beyond that the listing is truncated
+    private static final int COMPARE_FILE_LIMIT = 300;
+    
+    /**
+     * Returns the PR files touched between {@code fromSha} and {@code toSha}, each carrying only
+     * the compare patch for that range. Returns empty when an incremental review is not possible
+     * (force-push or rebase, truncated compare), in which case the caller reviews the full PR.
+     */
+    public Optional<List<CodeChange>> resolve(GHRepository repo, List<CodeChange> prChanges,
+                                              String fromSha, String toSha) throws IOException {
+        if (fromSha == null || toSha == null) {
+            return Optional.empty();
+        }
+        
+        GHCompare compare = repo.getCompare(fromSha, toSha);
+        if (compare.getStatus() == GHCompare.Status.identical) {
+            return Optional.of(List.of());
+        }
+        if (compare.getStatus() != GHCompare.Status.ahead) {
+            log.info("Previous head {} is not an ancestor of {} ({}), reviewing full PR",
+                fromSha, toSha, compare.getStatus());
+            return Optional.empty();
+        }
+        
+        GHCommit.File[] files = compare.getFiles();
+        if (files == null || files.length >= COMPARE_FILE_LIMIT) {
+            log.info("Compare {}..{} is too large for an incremental review", fromSha, toSha);
+            return Optional.empty();
+        }
+        
+        Map<String, GHCommit.File> pushed = new HashMap<>();
+        for (GHCommit.File file : files) {
+            pushed.put(file.getFileName(), file);
+        }
+        
+        // Keep PR order and only files that are still part of the PR diff
+        // (changes merged in from the base branch are not the author's)
+        List<CodeChange> changes = new ArrayList<>();
+        for (CodeChange change : prChanges) {
+            GHCommit.File file = pushed.get(change.getFileName());
+            if (file == null) {
+                continue;
+            }
+            changes.add(CodeChange.builder()
+                .fileName(file.getFileName())
+                .status(file.getStatus())
+                .additions(file.getLinesAdded())
+                .deletions(file.getLinesDeleted())
+                .changes(file.getLinesChanged())
+                .patch(file.getPatch())
+                .rawUrl(file.getRawUrl() != null ? file.getRawUrl().toString() : null)
+                .blobUrl(file.getBlobUrl() != null ? file.getBlobUrl().toString() : null)
+                .build());
+        }
+        
+        log.info("📐 Incremental review {}..{}: {} of {} PR files changed",
+            abbreviate(fromSha), abbreviate(toSha), changes.size(), prChanges.size());
+        return Optional.of(changes);
+    }
+    
+    private static String abbreviate(String sha) {
+        return sha.length() > 7 ? sha.substring(0, 7) : sha;
+    }
+}
@@ -0,0 +1,144 @@
+package com.seevis.codereview.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.seevis.codereview.model.ReviewIssue;
+import com.seevis.codereview.model.ReviewResult;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Parses a single-file review reply while it is still being streamed.
+ * <p>
+ * Text fragments are pushed into Jackson's non-blocking parser as they arrive; every issue is
+ * handed to the listener as soon as its object closes, without building a tree of the reply.
+ * The reply is schema-constrained JSON, so it is fed to the parser as is; anything after the root
+ * object is ignored.
+ * Not thread-safe: one instance per response.
+ */
+public class IncrementalReviewParser {
+    
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    
+    private final String fileName;
+    private final Consumer<ReviewIssue> onIssue;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    
+    private final List<ReviewIssue> issues = new ArrayList<>();
+    private final List<String> positives = new ArrayList<>();
+    private String summary;
+    private String severity;
+    
+    private boolean done;
+    private int depth;
+    private String rootField;
+    private String issueField;
+    private ReviewIssue currentIssue;
+    
+    public IncrementalReviewParser(String fileName, Consumer<ReviewIssue> onIssue) {
+        this.fileName = fileName;
+        this.onIssue = onIssue;
+        try {
+            this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+    
+    public void feed(String fragment) {
+        if (done || fragment == null || fragment.isEmpty()) {
+            return;
+        }
+        
+        byte[] bytes = fragment.getBytes(StandardCharsets.UTF_8);
+        try {
+            feeder.feedInput(bytes, 0, bytes.length);
+            drain();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to parse AI response: " + e.getMessage(), e);
+        }
+    }
+    
+    public ReviewResult finish() {
+        if (!done) {
+            throw new IllegalStateException("Failed to parse AI response: incomplete JSON");
+        }
+        
+        ReviewResult result = new ReviewResult();
+        result.setFileName(fileName);
+        result.setSummary(summary != null ? summary : "Code review completed");
+        result.setSeverity(severity != null ? severity : "info");
+        result.setIssues(issues);
+        result.setPositives(positives);
+        return result;
+    }
+    
+    private void drain() throws IOException {
+        JsonToken token;
+        while (!done && (token = parser.nextToken()) != JsonToken.NOT_AVAILABLE && token != null) {
+            switch (token) {
+                case START_OBJECT -> {
+                    depth++;
+                    if (depth == 3 && "issues".equals(rootField)) {
+                        currentIssue = new ReviewIssue();
+                        currentIssue.setType("general");
+                        currentIssue.setSeverity("info");
+                        currentIssue.setMessage("");
+                        currentIssue.setSuggestion("");
+                    }
+                }
+                case END_OBJECT -> {
+                    if (depth == 3 && currentIssue != null) {
+                        issues.add(currentIssue);
+                        onIssue.accept(currentIssue);
+                        currentIssue = null;
+                    }
+                    depth--;
+                    done = depth == 0;
+                }
+                case START_ARRAY -> depth++;
+                case END_ARRAY -> depth--;
+                case FIELD_NAME -> {
+                    if (depth == 1) {
+                        rootField = parser.currentName();
+                    } else if (depth == 3) {
+                        issueField = parser.currentName();
+                    }
+                }
+                default -> onValue(token);
+            }
+        }
+    }
+    
+    private void onValue(JsonToken token) throws IOException {
+        if (depth == 1) {
+            if ("summary".equals(rootField)) {
+                summary = parser.getValueAsString();
+            } else if ("severity".equals(rootField)) {
+                severity = parser.getValueAsString();
+            }
+        } else if (depth == 2 && "positives".equals(rootField)) {
+            positives.add(parser.getValueAsString());
+        } else if (depth == 3 && currentIssue != null && issueField != null) {
+            switch (issueField) {
+                case "line" -> currentIssue.setLine(token == JsonToken.VALUE_NULL ? null : parser.getValueAsInt());
+                case "type" -> currentIssue.setType(parser.getValueAsString());
+                case "severity" -> currentIssue.setSeverity(parser.getValueAsString());
+                case "message" -> currentIssue.setMessage(parser.getValueAsString());
+                case "suggestion" -> currentIssue.setSuggestion(parser.getValueAsString());
+                default -> {
+                    // unknown issue attribute
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.seevis.codereview.service;
+
+import com.seevis.codereview.model.CodeChange;
+import com.seevis.codereview.model.FileReviewOutcome;
+import com.seevis.codereview.model.PullRequest;
+import com.seevis.codereview.model.ReviewIssue;
+import com.seevis.codereview.model.ReviewResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SynchronousSink;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Fans the AI review out with bounded concurrency.
+ * Files are first packed into token-budgeted requests by {@link PromptPacker}; the per-request
+ * results are mapped back to one outcome per file, in the same order as the input changes.
+ * A file any of whose parts got a placeholder result (e.g. while the Gemini circuit is open)
+ * comes out as a failed outcome, and is counted as such in {@code codereview.file.reviews}.
+ */
+@Service
+@Slf4j
+public class ParallelReviewService {
+    
+    private final AIReviewService aiReviewService;
+    private final PromptPacker promptPacker;
+    private final ReviewMetrics reviewMetrics;
+    
+    @Value("${code-review.review-concurrency:8}")
+    private int reviewConcurrency;
+    
+    @Autowired
+    public ParallelReviewService(AIReviewService aiReviewService, PromptPacker promptPacker,
+                                 ReviewMetrics reviewMetrics) {
+        this.aiReviewService = aiReviewService;
+        this.promptPacker = promptPacker;
+        this.reviewMetrics = reviewMetrics;
+    }
+    
+    public List<FileReviewOutcome> reviewFiles(List<CodeChange> changes) {
+        return reviewFilesAsync(changes).collectList().block();
+    }
+    
+    /**
+     * Keeps up to {@code code-review.review-concurrency} Gemini calls in flight on the shared
+     * non-blocking client; no thread is parked per outstanding call.
+     */
+    public Flux<FileReviewOutcome> reviewFilesAsync(List<CodeChange> changes) {
+        return reviewFilesAsync(null, changes, (change, issue) -> { });
+    }
+    
+    /**
+     * Like {@link #reviewFilesAsync(List)}, but hands each issue to {@code onIssue} as soon as
+     * it is known, before the per-file outcomes are assembled. The callback runs on the Reactor
+     * threads serving the Gemini responses and must not block. {@code pullRequest} (may be null)
+     * is given to Gemini as context shared by all of the PR's requests.
+     */
+    public Flux<FileReviewOutcome> reviewFilesAsync(PullRequest pullRequest, List<CodeChange> changes,
+                                                    BiConsumer<CodeChange, ReviewIssue> onIssue) {
+        return reviewFilesAsync(pullRequest, Flux.just(changes), onIssue);
+    }
+    
+    /**
+     * Reviews files arriving in pages (see {@link ChangedFileFetcher}) and emits the outcomes in
+     * the order the files arrived, once all of them are done.
+     */
+    public Flux<FileReviewOutcome> reviewFilesAsync(PullRequest pullRequest, Flux<List<CodeChange>> pages,
+                                                    BiConsumer<CodeChange, ReviewIssue> onIssue) {
+        return Flux.defer(() -> {
+            Map<CodeChange, Integer> order = Collections.synchronizedMap(new IdentityHashMap<>());
+            Flux<List<CodeChange>> numbered = pages.doOnNext(page -> {
+                for (CodeChange change : page) {
+                    order.put(change, order.size());
+                }
+            });
+            return reviewFilesAsCompleted(pullRequest, numbered, onIssue)
+                .sort(Comparator.comparingInt(outcome -> order.get(outcome.getChange())));
+        });
+    }
+    
+    public Flux<FileReviewOutcome> reviewFilesAsCompleted(PullRequest pullRequest, List<CodeChange> changes,
+                                                          BiConsumer<CodeChange, ReviewIssue> onIssue) {
+        return reviewFilesAsCompleted(pullRequest, Flux.just(changes), onIssue);
+    }
+    
+    /**
+     * Emits each file's outcome as soon as all of its requests have finished, in completion
+     * order rather than input order, so callers can act on (or persist) finished files while
+     * the rest of the PR is still being reviewed.
+     * <p>
+     * Files are packed page by page, so small files are only batched with files of the same page.
+     * Pages are pulled as review slots free up: the first page's requests start while later pages
+     * are still being fetched, and a slow review holds back further page fetches.
+     */
+    public Flux<FileReviewOutcome> reviewFilesAsCompleted(PullRequest pullRequest, Flux<List<CodeChange>> pages,
+                                                          BiConsumer<CodeChange, ReviewIssue> onIssue) {
+        return pages
+            // One page at a time, so the next page is only pulled once this one's requests are under way
+            .concatMapIterable(this::pack, 1)
+            .flatMap(packed -> reviewBatch(pullRequest, packed.batch(), onIssue)
+                .map(outcome -> new PagePartOutcome(packed.page(), outcome)), Math.max(1, reviewConcurrency))
+            .handle((PagePartOutcome paged, SynchronousSink<FileReviewOutcome> sink) -> {
+                Page page = paged.page();
+                int fileIndex = paged.outcome().part().fileIndex();
+                page.byFile().get(fileIndex).add(paged.outcome());
+                if (--page.pendingParts()[fileIndex] == 0) {
+                    sink.next(assemble(page.changes().get(fileIndex), page.byFile().get(fileIndex)));
+                }
+            });
+    }
+    
+    private List<PackedBatch> pack(List<CodeChange> changes) {
+        List<PromptPacker.Batch> batches = promptPacker.pack(changes);
+        if (!changes.isEmpty()) {
+            log.info("📦 {} files packed into {} Gemini requests", changes.size(), batches.size());
+        }
+        
+        // Per file: requests still outstanding, and the part outcomes received so far
+        Page page = new Page(changes, new int[changes.size()], new ArrayList<>(changes.size()));
+        for (int i = 0; i < changes.size(); i++) {
+            page.byFile().add(new ArrayList<>(1));
+        }
+        List<PackedBatch> packed = new ArrayList<>(batches.size());
+        for (PromptPacker.Batch batch : batches) {
+            for (PromptPacker.Part part : batch.parts()) {
+                page.pendingParts()[part.fileIndex()]++;
+            }
+            packed.add(new PackedBatch(page, batch));
+        }
+        return packed;
+    }
+    
+    private Flux<PartOutcome> reviewBatch(PullRequest pullRequest, PromptPacker.Batch batch,
+                                          BiConsumer<CodeChange, ReviewIssue> onIssue) {
+        for (PromptPacker.Part part : batch.parts()) {
+            if (part.isChunked()) {
+                log.info("  📝 Reviewing: {} (part {}/{})", part.change().getFileName(), part.chunk(), part.chunks());
+            } else {
+                log.info("  📝 Reviewing: {}", part.change().getFileName());
+            }
+        }
+        
+        return aiReviewService.reviewBatchAsync(pullRequest, batch, onIssue)
+            .flatMapIterable(results -> {
+                List<PartOutcome> outcomes = new ArrayList<>(results.size());
+                for (int i = 0; i < results.size(); i++) {
+                    ReviewResult result = results.get(i);
+                    outcomes.add(result.isFailed()
+                        ? new PartOutcome(batch.parts().get(i), null, result.getError())
+                        : new PartOutcome(batch.parts().get(i), result, null));
+                }
+                return outcomes;
+            })
+            .onErrorResume(e -> {
+                log.error("Failed to review {} file(s): {}", batch.parts().size(), e.getMessage());
+                return Flux.fromIterable(batch.parts())
+                    .map(part -> new PartOutcome(part, null, String.valueOf(e.getMessage())));
+            });
+    }
+    
+    private FileReviewOutcome assemble(CodeChange change, List<PartOutcome> parts) {
+        String error = parts.stream()
+            .map(PartOutcome::error)
+            .filter(e -> e != null)
+            .findFirst()
+            .orElse(null);
+        if (error != null) {
+            log.error("Failed to review file {}: {}", change.getFileName(), error);
+            reviewMetrics.countFileReview(false);
+            return FileReviewOutcome.builder().change(change).error(error).build();
+        }
+        reviewMetrics.countFileReview(true);
+        
+        List<ReviewResult> results = parts.stream()
+            .sorted(Comparator.comparingInt(outcome -> outcome.part().chunk()))
+            .map(PartOutcome::result)
+            .collect(Collectors.toList());
+        return FileReviewOutcome.builder()
+            .change(change)
+            .result(mergeChunks(change.getFileName(), results))
+            .build();
+    }
+    
+    // Combines the reviews of the pieces of a split patch into one result for the file
+    private ReviewResult mergeChunks(String fileName, List<ReviewResult> results) {
+        if (results.size() == 1) {
+            return results.get(0);
+        }
+        
+        List<ReviewIssue> issues = new ArrayList<>();
+        Set<String> positives = new LinkedHashSet<>();
+        List<String> summaries = new ArrayList<>();
+        String severity = "info";
+        String error = null;
+        for (ReviewResult result : results) {
+            if (result.isFailed() && error == null) {
+                error = result.getError();
+            }
+            if (result.getIssues() != null) {
+                issues.addAll(result.getIssues());
+            }
+            if (result.getPositives() != null) {
+                positives.addAll(result.getPositives());
+            }
+            if (result.getSummary() != null && !result.getSummary().isEmpty()) {
+                summaries.add(result.getSummary());
+            }
+            if (severityRank(result.getSeverity()) > severityRank(severity)) {
+                severity = result.getSeverity();
+            }
+        }
+        
+        return ReviewResult.builder()
+            .fileName(fileName)
+            .summary(String.join(" ", summaries))
+            .severity(severity)
+            .issues(issues)
+            .positives(new ArrayList<>(positives))
+            .error(error)
+            .build();
+    }
+    
+    private static int severityRank(String severity) {
+        if ("error".equalsIgnoreCase(severity)) {
+            return 2;
+        }
+        if ("warning".equalsIgnoreCase(severity)) {
+            return 1;
+        }
+        return 0;
+    }
+    
+    private record PartOutcome(PromptPacker.Part part, ReviewResult result, String error) {
+    }
+    
+    private record Page(List<CodeChange> changes, int[] pendingParts, List<List<PartOutcome>> byFile) {
+    }
+    
+    private record PackedBatch(Page page, PromptPacker.Batch batch) {
+    }
+    
+    private record PagePartOutcome(Page page, PartOutcome outcome) {
+    }
+}
@@ -0,0 +1,152 @@
+package com.seevis.codereview.service;
+
+import com.seevis.codereview.model.CodeChange;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs file changes into Gemini requests that fit the input token budget.
+ * <p>
+ * Patches larger than the budget are split at hunk boundaries into several single-file requests;
+ * small patches are batched into one multi-file request so they share a single prompt preamble.
+ * Requests are returned in input order.
+ */
+@Service
+@Slf4j
+public class PromptPacker {
+    
+    // Rough size of the reviewer instructions and JSON format description
+    static final int PREAMBLE_TOKENS = 400;
+    
+    @Value("${gemini.input-token-budget:30000}")
+    private int inputTokenBudget;
+    
+    @Value("${gemini.batch.small-file-tokens:1500}")
+    private int smallFileTokens;
+    
+    @Value("${gemini.batch.max-files:8}")
+    private int maxFilesPerBatch;
+    
+    /**
+     * Cheap token estimate (about four characters per token for code and English text).
+     */
+    public static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + 3) / 4;
+    }
+    
+    public List<Batch> pack(List<CodeChange> changes) {
+        int patchBudget = Math.max(1, inputTokenBudget - PREAMBLE_TOKENS);
+        List<Batch> batches = new ArrayList<>();
+        List<Part> smallFiles = new ArrayList<>();
+        int smallFileTokensUsed = 0;
+        
+        for (int i = 0; i < changes.size(); i++) {
+            CodeChange change = changes.get(i);
+            String patch = change.getPatch() != null ? change.getPatch() : "";
+            int tokens = estimateTokens(patch);
+            
+            if (tokens > patchBudget) {
+                List<String> chunks = splitAtHunks(patch, patchBudget);
+                for (int c = 0; c < chunks.size(); c++) {
+                    batches.add(new Batch(List.of(new Part(i, change, chunks.get(c), c + 1, chunks.size()))));
+                }
+                log.debug("Split {} (~{} tokens) into {} requests", change.getFileName(), tokens, chunks.size());
+            } else if (tokens <= smallFileTokens && maxFilesPerBatch > 1) {
+                if (!smallFiles.isEmpty()
+                        && (smallFiles.size() >= maxFilesPerBatch || smallFileTokensUsed + tokens > patchBudget)) {
+                    batches.add(new Batch(smallFiles));
+                    smallFiles = new ArrayList<>();
+                    smallFileTokensUsed = 0;
+                }
+                smallFiles.add(new Part(i, change, patch, 1, 1));
+                smallFileTokensUsed += tokens;
+            } else {
+                batches.add(new Batch(List.of(new Part(i, change, patch, 1, 1))));
+            }
+        }
+        if (!smallFiles.isEmpty()) {
+            batches.add(new Batch(smallFiles));
+        }
+        
+        log.debug("Packed {} files into {} Gemini requests", changes.size(), batches.size());
+        return batches;
+    }
+    
+    /**
+     * Splits a unified diff into pieces of at most {@code tokenBudget} estimated tokens. Cuts are
+     * made at hunk headers; a single hunk that is larger than the budget is cut at line boundaries.
+     */
+    static List<String> splitAtHunks(String patch, int tokenBudget) {
+        int charBudget = tokenBudget * 4;
+        DiffIndex diff = DiffIndex.parse(patch);
+        List<String> chunks = new ArrayList<>();
+        if (diff.hunkCount() == 0) {
+            cutAtLines(chunks, patch, 0, patch.length(), charBudget);
+            return chunks;
+        }
+        
+        // The first piece also carries anything before the first hunk header
+        int chunkStart = 0;
+        for (int hunk = 0; hunk < diff.hunkCount(); hunk++) {
+            int hunkEnd = diff.hunkEnd(hunk);
+            if (hunkEnd - chunkStart <= charBudget) {
+                continue;
+            }
+            int hunkStart = hunk == 0 ? 0 : diff.hunkOffset(hunk);
+            if (hunkStart > chunkStart) {
+                chunks.add(patch.substring(chunkStart, hunkStart));
+                chunkStart = hunkStart;
+            }
+            if (hunkEnd - chunkStart > charBudget) {
+                // Oversized hunk: fall back to line boundaries
+                cutAtLines(chunks, patch, chunkStart, hunkEnd, charBudget);
+                chunkStart = hunkEnd;
+            }
+        }
+        if (chunkStart < patch.length()) {
+            chunks.add(patch.substring(chunkStart));
+        }
+        return chunks;
+    }
+    
+    private static void cutAtLines(List<String> chunks, String patch, int start, int end, int charBudget) {
+        while (start < end) {
+            int cut = Math.min(start + charBudget, end);
+            if (cut < end) {
+                int newline = patch.lastIndexOf('\n', cut - 1);
+                if (newline >= start) {
+                    cut = newline + 1;
+                }
+            }
+            chunks.add(patch.substring(start, cut));
+            start = cut;
+        }
+    }
+    
+    /**
+     * One Gemini request.
+     */
+    public record Batch(List<Part> parts) {
+        public boolean isMultiFile() {
+            return parts.size() > 1;
+        }
+    }
+    
+    /**
+     * A file, or one piece of a file, inside a request.
+     *
+     * @param fileIndex position of the file in the list passed to {@link #pack}
+     * @param patch     the patch text sent for this part
+     * @param chunk     1-based piece number when the patch was split
+     * @param chunks    total number of pieces of this file
+     */
+    public record Part(int fileIndex, CodeChange change, String patch, int chunk, int chunks) {
+        public boolean isChunked() {
+            return chunks > 1;
+        }
+    }
+}
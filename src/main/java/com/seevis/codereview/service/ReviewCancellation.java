@@ -0,0 +1,31 @@
+package com.seevis.codereview.service;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Cancellation handle for one running review. Cancelling it completes {@link #asMono()},
+ * which the review pipeline uses to abort outstanding Gemini calls.
+ */
+public class ReviewCancellation {
+    
+    private final Sinks.Empty<Void> signal = Sinks.empty();
+    private volatile boolean cancelled;
+    
+    public static ReviewCancellation none() {
+        return new ReviewCancellation();
+    }
+    
+    public void cancel() {
+        cancelled = true;
+        signal.tryEmitEmpty();
+    }
+    
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    public Mono<Void> asMono() {
+        return signal.asMono();
+    }
+}
@@ -0,0 +1,381 @@
+package com.seevis.codereview.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.seevis.codereview.model.CodeChange;
+import com.seevis.codereview.model.ReviewJob;
+import com.seevis.codereview.model.ReviewResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Append-only, file-backed record of review jobs, so work survives a restart.
+ * <p>
+ * Every accepted job, every file whose review finished and every finished job is appended as one
+ * JSON line. On startup the journal is replayed: jobs without a matching "finished" line are
+ * handed back to the scheduler, and their already reviewed files are answered from the journal
+ * instead of calling Gemini again. The head SHA last reviewed for each pull request is journaled
+ * too, so the first push after a restart is still reviewed incrementally. The file is compacted to
+ * the open jobs and reviewed heads at startup and whenever it outgrows
+ * {@code code-review.journal.compact-size-kb} (and twice its last compacted size), and truncated
+ * whenever no job is open and no head is recorded.
+ */
+@Service
+@Slf4j
+public class ReviewJobJournal {
+    
+    private static final String QUEUED = "queued";
+    private static final String FILE_REVIEWED = "file";
+    private static final String FINISHED = "finished";
+    private static final String REVIEWED_HEAD = "reviewed";
+    private static final String FORGOTTEN = "forgotten";
+    
+    private final ObjectMapper objectMapper = new ObjectMapper()
+        .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    
+    // Open jobs by job key, in the order they were first queued
+    private final Map<String, OpenJob> openJobs = new LinkedHashMap<>();
+    // Last reviewed head SHA by pull request key, least recently reviewed first
+    private final Map<String, String> reviewedHeads = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > maxReviewedHeads;
+        }
+    };
+    
+    private Path journalFile;
+    private BufferedWriter writer;
+    // Characters in the file, and in it right after the last compaction
+    private long journalSize;
+    private long compactedSize;
+    
+    @Autowired
+    private ReviewResultCache reviewResultCache;
+    
+    @Value("${gemini.model:gemini-1.5-flash}")
+    private String modelName;
+    
+    @Value("${code-review.journal.path:}")
+    private String journalPath;
+    
+    @Value("${code-review.journal.compact-size-kb:4096}")
+    private long compactSizeKb;
+    
+    @Value("${code-review.journal.max-reviewed-heads:10000}")
+    private int maxReviewedHeads;
+    
+    @PostConstruct
+    public void initialize() throws IOException {
+        if (journalPath == null || journalPath.isEmpty()) {
+            log.info("Review journal disabled");
+            return;
+        }
+        
+        journalFile = Paths.get(journalPath);
+        if (journalFile.getParent() != null) {
+            Files.createDirectories(journalFile.getParent());
+        }
+        if (Files.exists(journalFile)) {
+            replay();
+        }
+        compact();
+        log.info("📒 Review journal at {}: {} unfinished job(s), {} reviewed head(s)",
+            journalFile, openJobs.size(), reviewedHeads.size());
+    }
+    
+    @PreDestroy
+    public synchronized void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.warn("Could not close review journal: {}", e.getMessage());
+            }
+            writer = null;
+        }
+    }
+    
+    public boolean isEnabled() {
+        return journalFile != null;
+    }
+    
+    /**
+     * Jobs that were accepted but never finished before the last shutdown.
+     */
+    public synchronized List<ReviewJob> unfinishedJobs() {
+        return openJobs.values().stream().map(OpenJob::job).toList();
+    }
+    
+    /**
+     * Head SHAs last reviewed per pull request key ({@code owner/repo#number}) before the last shutdown.
+     */
+    public synchronized Map<String, String> reviewedHeads() {
+        return Map.copyOf(reviewedHeads);
+    }
+    
+    public synchronized void recordReviewedHead(String prKey, String headSha) {
+        if (!isEnabled() || headSha.equals(reviewedHeads.get(prKey))) {
+            return;
+        }
+        // Re-inserted so the most recently reviewed pull requests are the ones kept
+        reviewedHeads.remove(prKey);
+        reviewedHeads.put(prKey, headSha);
+        append(new JournalEntry(REVIEWED_HEAD, prKey, headSha, null, null, null, null));
+    }
+    
+    public synchronized void recordForgotten(String prKey) {
+        if (!isEnabled() || reviewedHeads.remove(prKey) == null) {
+            return;
+        }
+        append(new JournalEntry(FORGOTTEN, prKey, null, null, null, null, null));
+    }
+    
+    public synchronized void recordQueued(ReviewJob job) {
+        if (!isEnabled()) {
+            return;
+        }
+        OpenJob open = openJobs.get(job.getKey());
+        if (open == null || !Objects.equals(open.job().getHeadSha(), job.getHeadSha())) {
+            // A new head invalidates the file results of the previous one
+            open = new OpenJob(job, new HashMap<>());
+        } else {
+            open = new OpenJob(job, open.files());
+        }
+        openJobs.put(job.getKey(), open);
+        append(new JournalEntry(QUEUED, job.getKey(), job.getHeadSha(), job, null, null, null));
+    }
+    
+    /**
+     * Records a finished file review. Placeholder results of failed reviews are not recorded, so
+     * the file is sent to Gemini again after a restart.
+     */
+    public synchronized void recordFileReviewed(String jobKey, String headSha, CodeChange change, ReviewResult result) {
+        OpenJob open = openJobs.get(jobKey);
+        if (!isEnabled() || open == null || result == null || result.isFailed()
+                || !Objects.equals(open.job().getHeadSha(), headSha)) {
+            return;
+        }
+        String patchKey = patchKey(change);
+        open.files().put(change.getFileName(), new ReviewedFile(patchKey, result));
+        append(new JournalEntry(FILE_REVIEWED, jobKey, headSha, null, change.getFileName(), patchKey, result));
+    }
+    
+    /**
+     * A review recorded for this file before a restart, if the job is still at the same head and
+     * the file's patch (and the model and prompt version reviewing it) are unchanged.
+     */
+    public synchronized Optional<ReviewResult> reviewedFile(String jobKey, String headSha, CodeChange change) {
+        OpenJob open = openJobs.get(jobKey);
+        if (open == null || !Objects.equals(open.job().getHeadSha(), headSha)) {
+            return Optional.empty();
+        }
+        ReviewedFile file = open.files().get(change.getFileName());
+        if (file == null || !file.patchKey().equals(patchKey(change))) {
+            return Optional.empty();
+        }
+        return Optional.of(file.result());
+    }
+    
+    public synchronized void recordFinished(ReviewJob job) {
+        OpenJob open = openJobs.get(job.getKey());
+        // A newer head queued for the same PR stays open
+        if (!isEnabled() || open == null || !Objects.equals(open.job().getHeadSha(), job.getHeadSha())) {
+            return;
+        }
+        openJobs.remove(job.getKey());
+        if (openJobs.isEmpty() && reviewedHeads.isEmpty()) {
+            truncate();
+        } else {
+            append(new JournalEntry(FINISHED, job.getKey(), job.getHeadSha(), null, null, null, null));
+        }
+    }
+    
+    private void replay() throws IOException {
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank() && !replayLine(line)) {
+                    skipped++;
+                }
+            }
+        }
+        if (skipped > 0) {
+            log.warn("Skipped {} unreadable review journal line(s)", skipped);
+        }
+    }
+    
+    // Applies one journal line to the open jobs; false if the line cannot be used
+    private boolean replayLine(String line) {
+        JournalEntry entry;
+        try {
+            entry = objectMapper.readValue(line, JournalEntry.class);
+        } catch (IOException e) {
+            // Typically a line cut short by a crash mid-write
+            return false;
+        }
+        if (entry.type() == null || entry.key() == null || (QUEUED.equals(entry.type()) && entry.job() == null)) {
+            return false;
+        }
+        
+        OpenJob open = openJobs.get(entry.key());
+        switch (entry.type()) {
+            case QUEUED -> {
+                boolean sameHead = open != null && Objects.equals(open.job().getHeadSha(), entry.headSha());
+                openJobs.put(entry.key(), new OpenJob(entry.job(), sameHead ? open.files() : new HashMap<>()));
+            }
+            case FILE_REVIEWED -> {
+                // Entries without a key (older journals) are reviewed again
+                if (open != null && entry.patchKey() != null
+                        && Objects.equals(open.job().getHeadSha(), entry.headSha())) {
+                    open.files().put(entry.fileName(), new ReviewedFile(entry.patchKey(), entry.result()));
+                }
+            }
+            case FINISHED -> {
+                if (open != null && Objects.equals(open.job().getHeadSha(), entry.headSha())) {
+                    openJobs.remove(entry.key());
+                }
+            }
+            case REVIEWED_HEAD -> {
+                if (entry.headSha() == null) {
+                    return false;
+                }
+                reviewedHeads.remove(entry.key());
+                reviewedHeads.put(entry.key(), entry.headSha());
+            }
+            case FORGOTTEN -> reviewedHeads.remove(entry.key());
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Rewrites the journal with only the reviewed heads and open jobs, then reopens it for appending
+    private synchronized void compact() throws IOException {
+        Path temp = Files.createTempFile(journalFile.toAbsolutePath().getParent(), "review-journal", ".tmp");
+        long size = 0;
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, String> head : reviewedHeads.entrySet()) {
+                    size += writeLine(out, new JournalEntry(REVIEWED_HEAD, head.getKey(), head.getValue(),
+                        null, null, null, null));
+                }
+                for (OpenJob open : openJobs.values()) {
+                    ReviewJob job = open.job();
+                    size += writeLine(out, new JournalEntry(QUEUED, job.getKey(), job.getHeadSha(), job, null, null, null));
+                    for (Map.Entry<String, ReviewedFile> file : open.files().entrySet()) {
+                        size += writeLine(out, new JournalEntry(FILE_REVIEWED, job.getKey(), job.getHeadSha(), null,
+                            file.getKey(), file.getValue().patchKey(), file.getValue().result()));
+                    }
+                }
+            }
+            close();
+            Files.move(temp, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        journalSize = size;
+        compactedSize = size;
+    }
+    
+    private void truncate() {
+        try {
+            close();
+            writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            journalSize = 0;
+            compactedSize = 0;
+        } catch (IOException e) {
+            log.warn("Could not truncate review journal: {}", e.getMessage());
+        }
+    }
+    
+    private void append(JournalEntry entry) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            journalSize += writeLine(writer, entry);
+            // Flushed per line so a killed process loses at most the entry being written
+            writer.flush();
+        } catch (IOException e) {
+            log.warn("Could not append to review journal: {}", e.getMessage());
+            return;
+        }
+        
+        // Under steady load some job is always open, so the file is never truncated
+        if (journalSize > compactSizeKb * 1024 && journalSize > 2 * compactedSize) {
+            try {
+                compact();
+                log.debug("Compacted review journal to {} open job(s)", openJobs.size());
+            } catch (IOException e) {
+                log.warn("Could not compact review journal: {}", e.getMessage());
+                reopen();
+            }
+        }
+    }
+    
+    // After a failed compaction the old file is still in place; keep appending to it
+    private void reopen() {
+        // Do not retry on every append
+        compactedSize = journalSize;
+        if (writer != null) {
+            return;
+        }
+        try {
+            writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            log.warn("Could not reopen review journal: {}", e.getMessage());
+        }
+    }
+    
+    // Same SHA-256 key as the review result cache, so a file is only resumed for the exact same patch
+    private String patchKey(CodeChange change) {
+        return reviewResultCache.keyFor(modelName, AIReviewService.PROMPT_VERSION, change.getFileName(), change.getPatch());
+    }
+    
+    // Returns the number of characters written
+    private int writeLine(BufferedWriter out, JournalEntry entry) throws IOException {
+        String line = objectMapper.writeValueAsString(entry);
+        out.write(line);
+        out.newLine();
+        return line.length() + 1;
+    }
+    
+    record JournalEntry(String type, String key, String headSha, ReviewJob job,
+                        String fileName, String patchKey, ReviewResult result) {
+    }
+    
+    private record OpenJob(ReviewJob job, Map<String, ReviewedFile> files) {
+    }
+    
+    private record ReviewedFile(String patchKey, ReviewResult result) {
+    }
+}
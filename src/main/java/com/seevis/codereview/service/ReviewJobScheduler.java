@@ -0,0 +1,322 @@
+package com.seevis.codereview.service;
+
+import com.seevis.codereview.model.ReviewJob;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Dedicated scheduler for webhook-triggered reviews.
+ * <p>
+ * Jobs wait in a bounded queue and are handed to a fixed set of worker threads. Repositories are
+ * served round-robin so one busy repository cannot starve the others, and within a repository
+ * smaller PRs go first, with waiting time gradually raising the priority of larger ones.
+ * When the queue is full {@link #submit} rejects the job so the caller can push back.
+ * <p>
+ * Jobs are keyed by (repository, PR). A newer push replaces a queued job for the same PR and
+ * cancels a running one, so only the latest head consumes Gemini and GitHub quota.
+ * <p>
+ * Accepted and finished jobs are recorded in the {@link ReviewJobJournal}; jobs left unfinished
+ * by a restart are queued again on startup. A job that runs out of GitHub quota is deferred and
+ * queued again after the rate limit resets, unless a newer push for the PR arrives first.
+ */
+@Service
+@Slf4j
+public class ReviewJobScheduler {
+    
+    private final WebhookService webhookService;
+    private final ReviewJobJournal reviewJobJournal;
+    private final ReviewMetrics reviewMetrics;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition jobAvailable = lock.newCondition();
+    private final Map<String, List<ReviewJob>> queuesByRepository = new HashMap<>();
+    private final Deque<String> repositoryRotation = new ArrayDeque<>();
+    private final Map<String, RunningReview> runningReviews = new HashMap<>();
+    private final Map<String, ReviewJob> deferredReviews = new HashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final List<Thread> workers = new ArrayList<>();
+    private int queuedJobs;
+    private volatile boolean running;
+    
+    @Value("${code-review.scheduler.workers:4}")
+    private int workerCount;
+    
+    @Value("${code-review.scheduler.queue-capacity:100}")
+    private int queueCapacity;
+    
+    @Value("${code-review.scheduler.aging-seconds-per-file:10}")
+    private long agingSecondsPerFile;
+    
+    @Value("${code-review.scheduler.retry-after-seconds:30}")
+    private int retryAfterSeconds;
+    
+    @Autowired
+    public ReviewJobScheduler(WebhookService webhookService, ReviewJobJournal reviewJobJournal,
+                              ReviewMetrics reviewMetrics) {
+        this.webhookService = webhookService;
+        this.reviewJobJournal = reviewJobJournal;
+        this.reviewMetrics = reviewMetrics;
+    }
+    
+    @PostConstruct
+    public void start() {
+        running = true;
+        for (int i = 1; i <= Math.max(1, workerCount); i++) {
+            Thread worker = new Thread(this::runWorker, "review-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        log.info("Review scheduler started: {} workers, queue capacity {}", workers.size(), queueCapacity);
+        reviewMetrics.bindScheduler(this);
+        
+        // Resume reviews that were interrupted by the last shutdown
+        for (ReviewJob job : reviewJobJournal.unfinishedJobs()) {
+            log.info("♻️ Resuming unfinished review {} (head {})", job.getKey(), job.getHeadSha());
+            if (!submit(job)) {
+                log.warn("Could not resume review {}, queue is full", job.getKey());
+            }
+        }
+    }
+    
+    /**
+     * Cancels running reviews instead of interrupting them, so they stop without being reported
+     * as failed and stay open in the journal to be resumed after the restart.
+     */
+    @PreDestroy
+    public void stop() {
+        lock.lock();
+        try {
+            running = false;
+            runningReviews.values().forEach(review -> review.cancellation().cancel());
+            jobAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Queues a review job.
+     *
+     * @return false if the queue is full and the job was not accepted
+     */
+    public boolean submit(ReviewJob job) {
+        lock.lock();
+        try {
+            // A new delivery supersedes a job waiting out the GitHub rate limit
+            deferredReviews.remove(job.getKey());
+            
+            // Same head already running: duplicate delivery
+            RunningReview current = runningReviews.get(job.getKey());
+            if (current != null && isSameHead(current.job(), job)) {
+                log.info("Review {} for head {} already running, ignoring", job.getKey(), job.getHeadSha());
+                return true;
+            }
+            
+            if (replaceQueued(job)) {
+                reviewJobJournal.recordQueued(job);
+                cancelRunning(current);
+                return true;
+            }
+            
+            if (queuedJobs >= queueCapacity) {
+                log.warn("🚦 Review queue full ({} jobs), rejecting {}", queuedJobs, job.getKey());
+                return false;
+            }
+            
+            job.setEnqueuedAt(System.currentTimeMillis());
+            List<ReviewJob> queue = queuesByRepository.get(job.getRepository());
+            if (queue == null) {
+                queue = new ArrayList<>();
+                queuesByRepository.put(job.getRepository(), queue);
+                repositoryRotation.addLast(job.getRepository());
+            }
+            queue.add(job);
+            queuedJobs++;
+            reviewJobJournal.recordQueued(job);
+            cancelRunning(current);
+            jobAvailable.signal();
+            
+            log.debug("Queued review {} ({} files), queue depth {}", job.getKey(), job.getChangedFiles(), queuedJobs);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queuedJobs;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public int getInFlight() {
+        return inFlight.get();
+    }
+    
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+    
+    private void runWorker() {
+        while (running) {
+            RunningReview review;
+            try {
+                review = take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            
+            ReviewJob job = review.job();
+            inFlight.incrementAndGet();
+            try {
+                webhookService.processCodeReview(job.getRepository(), job.getPrNumber(),
+                    job.getInstallationId(), review.cancellation());
+                if (!review.cancellation().isCancelled()) {
+                    reviewJobJournal.recordFinished(job);
+                }
+            } catch (GitHubRateLimitedException e) {
+                defer(job, e.getResetAt());
+            } catch (Exception e) {
+                log.error("Review job {} failed: {}", job.getKey(), e.getMessage(), e);
+            } finally {
+                inFlight.decrementAndGet();
+                lock.lock();
+                try {
+                    runningReviews.remove(job.getKey(), review);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+    
+    // Queues the job again once the GitHub quota has reset; it stays open in the journal meanwhile
+    private void defer(ReviewJob job, Instant resetAt) {
+        long delayMillis = Math.max(1000, Duration.between(Instant.now(), resetAt).toMillis() + 1000);
+        lock.lock();
+        try {
+            deferredReviews.put(job.getKey(), job);
+        } finally {
+            lock.unlock();
+        }
+        log.warn("🚦 Deferring review {} for {}s until the GitHub rate limit resets", job.getKey(), delayMillis / 1000);
+        
+        CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS).execute(() -> {
+            boolean due;
+            lock.lock();
+            try {
+                due = running && deferredReviews.remove(job.getKey(), job);
+            } finally {
+                lock.unlock();
+            }
+            if (due && !submit(job)) {
+                log.warn("Could not requeue deferred review {}, queue is full", job.getKey());
+            }
+        });
+    }
+    
+    private RunningReview take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (running && queuedJobs == 0) {
+                jobAvailable.await();
+            }
+            if (!running) {
+                throw new InterruptedException("Review scheduler stopped");
+            }
+            
+            // Next repository in round-robin order
+            String repository = repositoryRotation.pollFirst();
+            List<ReviewJob> queue = queuesByRepository.get(repository);
+            ReviewJob job = removeHighestPriority(queue);
+            queuedJobs--;
+            RunningReview review = new RunningReview(job, new ReviewCancellation());
+            runningReviews.put(job.getKey(), review);
+            
+            if (queue.isEmpty()) {
+                queuesByRepository.remove(repository);
+            } else {
+                repositoryRotation.addLast(repository);
+            }
+            return review;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    // Replaces a queued job for the same PR in place, keeping its position and waiting time
+    private boolean replaceQueued(ReviewJob job) {
+        List<ReviewJob> queue = queuesByRepository.get(job.getRepository());
+        if (queue == null) {
+            return false;
+        }
+        for (int i = 0; i < queue.size(); i++) {
+            ReviewJob queued = queue.get(i);
+            if (queued.getPrNumber() == job.getPrNumber()) {
+                job.setEnqueuedAt(queued.getEnqueuedAt());
+                queue.set(i, job);
+                log.info("🔁 Replaced queued review {} ({} -> {})",
+                    job.getKey(), queued.getHeadSha(), job.getHeadSha());
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void cancelRunning(RunningReview current) {
+        if (current != null && !current.cancellation().isCancelled()) {
+            log.info("⏹️ Cancelling superseded review {} (head {})", current.job().getKey(), current.job().getHeadSha());
+            current.cancellation().cancel();
+        }
+    }
+    
+    private static boolean isSameHead(ReviewJob a, ReviewJob b) {
+        return a.getHeadSha() != null && a.getHeadSha().equals(b.getHeadSha());
+    }
+    
+    private ReviewJob removeHighestPriority(List<ReviewJob> queue) {
+        long now = System.currentTimeMillis();
+        int best = 0;
+        long bestScore = Long.MAX_VALUE;
+        for (int i = 0; i < queue.size(); i++) {
+            long score = priorityScore(queue.get(i), now);
+            if (score < bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return queue.remove(best);
+    }
+    
+    // Lower is served first: file count, minus one file per aging interval spent waiting
+    private long priorityScore(ReviewJob job, long now) {
+        long waitedSeconds = (now - job.getEnqueuedAt()) / 1000;
+        return job.getChangedFiles() - waitedSeconds / Math.max(1, agingSecondsPerFile);
+    }
+    
+    private record RunningReview(ReviewJob job, ReviewCancellation cancellation) {
+    }
+}
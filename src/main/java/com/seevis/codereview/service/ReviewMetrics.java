@@ -0,0 +1,127 @@
+package com.seevis.codereview.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Micrometer meters for the review pipeline. All meter names are defined here; in web mode
+ * they are scraped from {@code /actuator/prometheus}.
+ * <ul>
+ *   <li>{@code codereview.stage} - timer per pipeline stage ({@code stage} tag)</li>
+ *   <li>{@code codereview.gemini.call} - timer per Gemini HTTP attempt ({@code model}, {@code outcome})</li>
+ *   <li>{@code codereview.gemini.tokens} - counter of {@code usageMetadata} tokens ({@code model}, {@code type})</li>
+ *   <li>{@code codereview.files} - counter of changed files by {@link FileFilter} outcome ({@code outcome})</li>
+ *   <li>{@code codereview.file.reviews} - counter of files sent to Gemini by result ({@code outcome})</li>
+ *   <li>{@code codereview.queue.depth}, {@code codereview.reviews.in_flight} - scheduler gauges</li>
+ *   <li>{@code codereview.cache.requests}, {@code codereview.cache.hit_ratio} - review cache</li>
+ * </ul>
+ */
+@Component
+public class ReviewMetrics {
+    
+    public static final String PR_FETCH = "pr_fetch";
+    public static final String CHANGED_FILES = "changed_files";
+    public static final String FILTER = "filter";
+    public static final String AI_REVIEW = "ai_review";
+    public static final String PARSE = "parse";
+    public static final String POST_REVIEW = "post_review";
+    
+    private final MeterRegistry registry;
+    
+    @Autowired
+    public ReviewMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+    
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+    
+    public void stop(Timer.Sample sample, String stage) {
+        sample.stop(Timer.builder("codereview.stage")
+            .description("Time spent per review pipeline stage")
+            .tag("stage", stage)
+            .register(registry));
+    }
+    
+    public void stopGeminiCall(Timer.Sample sample, String model, boolean success) {
+        sample.stop(Timer.builder("codereview.gemini.call")
+            .description("Latency of individual Gemini requests")
+            .tag("model", model)
+            .tag("outcome", success ? "success" : "error")
+            .register(registry));
+    }
+    
+    /**
+     * Counts the tokens reported in a Gemini response's {@code usageMetadata}, if present.
+     */
+    public void recordTokenUsage(String model, JsonNode usageMetadata) {
+        if (usageMetadata == null || usageMetadata.isMissingNode()) {
+            return;
+        }
+        countTokens(model, "prompt", usageMetadata.path("promptTokenCount").asLong(0));
+        countTokens(model, "candidates", usageMetadata.path("candidatesTokenCount").asLong(0));
+        countTokens(model, "cached", usageMetadata.path("cachedContentTokenCount").asLong(0));
+    }
+    
+    public void countFileReview(boolean success) {
+        Counter.builder("codereview.file.reviews")
+            .description("Files sent to Gemini by review result")
+            .tag("outcome", success ? "success" : "error")
+            .register(registry)
+            .increment();
+    }
+    
+    public void countFiles(String outcome, long count) {
+        if (count > 0) {
+            Counter.builder("codereview.files")
+                .description("Changed files by filter outcome")
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment(count);
+        }
+    }
+    
+    public void bindScheduler(ReviewJobScheduler scheduler) {
+        Gauge.builder("codereview.queue.depth", scheduler, ReviewJobScheduler::getQueueDepth)
+            .description("Review jobs waiting for a worker")
+            .register(registry);
+        Gauge.builder("codereview.reviews.in_flight", scheduler, ReviewJobScheduler::getInFlight)
+            .description("Reviews currently running")
+            .register(registry);
+    }
+    
+    public void bindCache(ReviewResultCache cache) {
+        FunctionCounter.builder("codereview.cache.requests", cache, ReviewResultCache::getHits)
+            .tag("result", "hit")
+            .register(registry);
+        FunctionCounter.builder("codereview.cache.requests", cache, ReviewResultCache::getMisses)
+            .tag("result", "miss")
+            .register(registry);
+        Gauge.builder("codereview.cache.hit_ratio", cache, ReviewMetrics::hitRatio)
+            .description("Share of review cache lookups answered from the cache")
+            .register(registry);
+    }
+    
+    private void countTokens(String model, String type, long tokens) {
+        if (tokens > 0) {
+            Counter.builder("codereview.gemini.tokens")
+                .tag("model", model)
+                .tag("type", type)
+                .register(registry)
+                .increment(tokens);
+        }
+    }
+    
+    private static double hitRatio(ReviewResultCache cache) {
+        long hits = cache.getHits();
+        long total = hits + cache.getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,150 @@
+package com.seevis.codereview.service;
+
+import com.seevis.codereview.model.CodeChange;
+import com.seevis.codereview.model.ReviewComment;
+import lombok.extern.slf4j.Slf4j;
+import org.kohsuke.github.GHPullRequest;
+import org.kohsuke.github.GHPullRequestReviewBuilder;
+import org.kohsuke.github.GHPullRequestReviewEvent;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.HttpException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.seevis.codereview.service.GitHubCallScheduler.Priority.HIGH;
+
+/**
+ * Posts review results to a pull request as a single GitHub review: one API write and one
+ * notification instead of a comment per file.
+ * <p>
+ * Comment lines are checked against the PR's patches before posting and mapped to diff
+ * positions; comments on lines outside the diff (which would make GitHub reject the whole review
+ * with a 422) are listed in the review body instead. Reviews with more than
+ * {@code github.review.max-comments-per-request} inline comments are posted in chunks, and a
+ * chunk GitHub still rejects is split in half until the offending comment is isolated.
+ */
+@Service
+@Slf4j
+public class ReviewPublisher {
+    
+    // GitHub rejects review bodies above 65536 characters
+    static final int MAX_BODY_LENGTH = 65_000;
+    
+    @Autowired
+    private GitHubCallScheduler gitHubCallScheduler;
+    
+    @Value("${github.review.max-comments-per-request:50}")
+    private int maxCommentsPerRequest;
+    
+    /**
+     * Posts {@code body} and {@code comments} as a review of {@code headSha}.
+     *
+     * @param prFiles the PR's files with their full patches (not an incremental diff), which is
+     *                what GitHub's diff positions refer to
+     * @return the number of reviews created
+     */
+    public int publish(GitHub github, GHPullRequest pr, String headSha, Collection<CodeChange> prFiles,
+                       String body, List<ReviewComment> comments) throws IOException {
+        Map<String, DiffIndex> diffs = new HashMap<>();
+        for (CodeChange file : prFiles) {
+            diffs.put(file.getFileName(), DiffIndex.parse(file.getPatch()));
+        }
+        
+        List<InlineComment> inline = new ArrayList<>();
+        List<ReviewComment> outsideDiff = new ArrayList<>();
+        for (ReviewComment comment : comments) {
+            DiffIndex diff = diffs.get(comment.getPath());
+            int position = diff != null && comment.getLine() != null ? diff.position(comment.getLine()) : -1;
+            if (position > 0) {
+                inline.add(new InlineComment(comment, position));
+            } else {
+                outsideDiff.add(comment);
+            }
+        }
+        if (!outsideDiff.isEmpty()) {
+            log.info("{} comment(s) on PR #{} point outside the diff, moving them into the review body",
+                outsideDiff.size(), pr.getNumber());
+        }
+        
+        int chunkSize = Math.max(1, maxCommentsPerRequest);
+        int chunks = Math.max(1, (inline.size() + chunkSize - 1) / chunkSize);
+        int reviews = 0;
+        for (int i = 0; i < chunks; i++) {
+            List<InlineComment> chunk = inline.subList(i * chunkSize, Math.min(inline.size(), (i + 1) * chunkSize));
+            String chunkBody = i == 0 ? withComments(body, outsideDiff) : continuation(i + 1, chunks);
+            reviews += submit(github, pr, headSha, chunkBody, chunk);
+        }
+        log.info("📝 Posted review to PR #{}: {} inline comment(s) in {} review(s)", pr.getNumber(), inline.size(), reviews);
+        return reviews;
+    }
+    
+    // A 422 on a review with several comments is retried as two halves; a single rejected comment moves into the body
+    private int submit(GitHub github, GHPullRequest pr, String headSha, String body,
+                       List<InlineComment> comments) throws IOException {
+        GHPullRequestReviewBuilder review = pr.createReview()
+            .body(truncate(body))
+            .event(GHPullRequestReviewEvent.COMMENT);
+        if (headSha != null) {
+            review.commitId(headSha);
+        }
+        for (InlineComment inline : comments) {
+            review.comment(inline.comment().getBody(), inline.comment().getPath(), inline.position());
+        }
+        
+        try {
+            gitHubCallScheduler.call(github, HIGH, review::create);
+            return 1;
+        } catch (HttpException e) {
+            if (e.getResponseCode() != 422 || comments.isEmpty()) {
+                throw e;
+            }
+            if (comments.size() == 1) {
+                ReviewComment rejected = comments.get(0).comment();
+                log.warn("GitHub rejected the comment on {}:{}, posting it in the review body",
+                    rejected.getPath(), rejected.getLine());
+                return submit(github, pr, headSha, withComments(body, List.of(rejected)), List.of());
+            }
+            log.warn("GitHub rejected a review with {} comments, splitting it: {}", comments.size(), e.getMessage());
+            int half = comments.size() / 2;
+            return submit(github, pr, headSha, body, comments.subList(0, half))
+                + submit(github, pr, headSha, "🤖 **AI Code Review** (continued)", comments.subList(half, comments.size()));
+        }
+    }
+    
+    private static String withComments(String body, List<ReviewComment> comments) {
+        if (comments.isEmpty()) {
+            return body;
+        }
+        StringBuilder text = new StringBuilder(body).append("\n\n### Comments outside the diff\n\n");
+        for (ReviewComment comment : comments) {
+            text.append("**`").append(comment.getPath()).append("`");
+            if (comment.getLine() != null) {
+                text.append(" (line ").append(comment.getLine()).append(")");
+            }
+            text.append("**\n\n").append(comment.getBody()).append("\n\n");
+        }
+        return text.toString();
+    }
+    
+    private static String continuation(int part, int parts) {
+        return String.format("🤖 **AI Code Review** (continued, part %d of %d)", part, parts);
+    }
+    
+    private static String truncate(String body) {
+        if (body.length() <= MAX_BODY_LENGTH) {
+            return body;
+        }
+        return body.substring(0, MAX_BODY_LENGTH) + "\n\n_(truncated)_";
+    }
+    
+    private record InlineComment(ReviewComment comment, int position) {
+    }
+}
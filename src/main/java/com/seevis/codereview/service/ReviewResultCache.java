@@ -0,0 +1,284 @@
+package com.seevis.codereview.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.seevis.codereview.model.ReviewResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache of AI review results.
+ * Entries are keyed by a SHA-256 over (model, prompt version, file name, patch), so a
+ * byte-identical patch pushed again is answered without calling Gemini.
+ * <p>
+ * The optional disk tier holds one JSON file per entry. It is swept at startup and every
+ * {@code code-review.cache.disk-sweep-minutes}: expired files are deleted, then the oldest files
+ * by last-modified time until at most {@code disk-max-entries} files and {@code disk-max-size-mb}
+ * remain.
+ */
+@Service
+@Slf4j
+public class ReviewResultCache {
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    
+    private Map<String, CachedReview> memory;
+    private Path diskDirectory;
+    private Duration ttl;
+    private Disposable diskSweeper;
+    
+    @Autowired
+    private ReviewMetrics reviewMetrics;
+    
+    @Value("${code-review.cache.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${code-review.cache.max-entries:5000}")
+    private int maxEntries;
+    
+    @Value("${code-review.cache.ttl-minutes:1440}")
+    private long ttlMinutes;
+    
+    @Value("${code-review.cache.disk-path:}")
+    private String diskPath;
+    
+    @Value("${code-review.cache.disk-max-entries:50000}")
+    private int diskMaxEntries;
+    
+    @Value("${code-review.cache.disk-max-size-mb:512}")
+    private long diskMaxSizeMb;
+    
+    @Value("${code-review.cache.disk-sweep-minutes:60}")
+    private long diskSweepMinutes;
+    
+    @PostConstruct
+    public void initialize() throws IOException {
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        this.memory = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedReview> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        
+        if (enabled && diskPath != null && !diskPath.isEmpty()) {
+            this.diskDirectory = Paths.get(diskPath);
+            Files.createDirectories(diskDirectory);
+            log.info("Review cache: {} entries in memory, disk tier at {}", maxEntries, diskDirectory);
+            diskSweeper = Flux.interval(Duration.ZERO, Duration.ofMinutes(Math.max(1, diskSweepMinutes)),
+                    Schedulers.boundedElastic())
+                .subscribe(tick -> sweepDisk());
+        } else {
+            log.info("Review cache: {} entries in memory{}", maxEntries, enabled ? "" : " (disabled)");
+        }
+        reviewMetrics.bindCache(this);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        if (diskSweeper != null) {
+            diskSweeper.dispose();
+        }
+    }
+    
+    public String keyFor(String model, String promptVersion, String fileName, String patch) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, model);
+            update(digest, promptVersion);
+            update(digest, fileName);
+            update(digest, patch);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    public Optional<ReviewResult> get(String key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        
+        CachedReview cached;
+        synchronized (memory) {
+            cached = memory.get(key);
+            if (cached != null && cached.isExpired(ttl)) {
+                memory.remove(key);
+                cached = null;
+            }
+        }
+        
+        if (cached == null && diskDirectory != null) {
+            cached = readFromDisk(key);
+            if (cached != null) {
+                synchronized (memory) {
+                    memory.put(key, cached);
+                }
+            }
+        }
+        
+        if (cached == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        
+        hits.incrementAndGet();
+        // Hand out a copy so callers can't mutate the cached instance
+        return Optional.of(objectMapper.convertValue(cached.result(), ReviewResult.class));
+    }
+    
+    public void put(String key, ReviewResult result) {
+        if (!enabled) {
+            return;
+        }
+        
+        CachedReview cached = new CachedReview(
+            objectMapper.convertValue(result, ReviewResult.class), System.currentTimeMillis());
+        synchronized (memory) {
+            memory.put(key, cached);
+        }
+        
+        if (diskDirectory != null) {
+            Mono.fromRunnable(() -> writeToDisk(key, cached.result()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe();
+        }
+    }
+    
+    public long getHits() {
+        return hits.get();
+    }
+    
+    public long getMisses() {
+        return misses.get();
+    }
+    
+    private CachedReview readFromDisk(String key) {
+        Path file = diskDirectory.resolve(key + ".json");
+        try {
+            if (!Files.exists(file)) {
+                return null;
+            }
+            long storedAt = Files.getLastModifiedTime(file).toMillis();
+            CachedReview cached = new CachedReview(null, storedAt);
+            if (cached.isExpired(ttl)) {
+                Files.deleteIfExists(file);
+                return null;
+            }
+            return new CachedReview(objectMapper.readValue(file.toFile(), ReviewResult.class), storedAt);
+        } catch (IOException e) {
+            log.warn("Could not read cached review {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+    
+    private void writeToDisk(String key, ReviewResult result) {
+        try {
+            Path target = diskDirectory.resolve(key + ".json");
+            Path temp = Files.createTempFile(diskDirectory, key, ".tmp");
+            objectMapper.writeValue(temp.toFile(), result);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not write cached review {}: {}", key, e.getMessage());
+        }
+    }
+    
+    /**
+     * Deletes expired disk entries, then the oldest ones beyond the entry and size limits.
+     */
+    void sweepDisk() {
+        List<DiskEntry> entries = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        int expired = 0;
+        try (Stream<Path> files = Files.list(diskDirectory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!name.endsWith(".json") && !name.endsWith(".tmp")) {
+                    continue;
+                }
+                try {
+                    long modified = Files.getLastModifiedTime(file).toMillis();
+                    // Leftover temp files of interrupted writes are dropped like expired entries
+                    if (now - modified > ttl.toMillis() || name.endsWith(".tmp") && now - modified > 60_000) {
+                        Files.deleteIfExists(file);
+                        expired++;
+                    } else if (name.endsWith(".json")) {
+                        entries.add(new DiskEntry(file, modified, Files.size(file)));
+                    }
+                } catch (IOException e) {
+                    // Removed by a concurrent lookup or write
+                    log.debug("Skipping cached review {}: {}", file, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not sweep review cache directory {}: {}", diskDirectory, e.getMessage());
+            return;
+        }
+        
+        // Keep the newest entries that fit both limits
+        entries.sort(Comparator.comparingLong(DiskEntry::modified).reversed());
+        long maxBytes = diskMaxSizeMb * 1024 * 1024;
+        long bytes = 0;
+        int evicted = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            DiskEntry entry = entries.get(i);
+            bytes += entry.size();
+            if (i >= diskMaxEntries || bytes > maxBytes) {
+                try {
+                    Files.deleteIfExists(entry.file());
+                    evicted++;
+                } catch (IOException e) {
+                    log.warn("Could not evict cached review {}: {}", entry.file(), e.getMessage());
+                }
+            }
+        }
+        if (expired > 0 || evicted > 0) {
+            log.info("🧹 Review cache disk sweep: {} expired and {} evicted file(s) removed, {} kept",
+                expired, evicted, entries.size() - evicted);
+        }
+    }
+    
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+    }
+    
+    private record DiskEntry(Path file, long modified, long size) {
+    }
+    
+    private record CachedReview(ReviewResult result, long storedAt) {
+        boolean isExpired(Duration ttl) {
+            return System.currentTimeMillis() - storedAt > ttl.toMillis();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.seevis.codereview.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the head SHA that was last reviewed for each pull request,
+ * so the next push only needs the commits added since then.
+ * Heads are persisted in the review journal when it is enabled, so this survives a restart.
+ */
+@Service
+@Slf4j
+public class ReviewedHeadTracker {
+    
+    private final Map<String, String> reviewedHeads = new ConcurrentHashMap<>();
+    
+    @Autowired
+    private ReviewJobJournal reviewJobJournal;
+    
+    @PostConstruct
+    public void initialize() {
+        reviewedHeads.putAll(reviewJobJournal.reviewedHeads());
+        if (!reviewedHeads.isEmpty()) {
+            log.info("Restored reviewed heads for {} pull request(s) from the review journal", reviewedHeads.size());
+        }
+    }
+    
+    public Optional<String> lastReviewedHead(String repository, int prNumber) {
+        return Optional.ofNullable(reviewedHeads.get(key(repository, prNumber)));
+    }
+    
+    public void markReviewed(String repository, int prNumber, String headSha) {
+        if (headSha == null || headSha.isEmpty()) {
+            return;
+        }
+        reviewedHeads.put(key(repository, prNumber), headSha);
+        reviewJobJournal.recordReviewedHead(key(repository, prNumber), headSha);
+        log.debug("Recorded reviewed head {} for {} PR #{}", headSha, repository, prNumber);
+    }
+    
+    public void forget(String repository, int prNumber) {
+        reviewedHeads.remove(key(repository, prNumber));
+        reviewJobJournal.recordForgotten(key(repository, prNumber));
+    }
+    
+    private static String key(String repository, int prNumber) {
+        return repository + "#" + prNumber;
+    }
+}
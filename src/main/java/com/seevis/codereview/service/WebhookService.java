@@ -1,188 +1,305 @@
 package com.seevis.codereview.service;
 
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.kohsuke.github.*;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.seevis.codereview.service.GitHubCallScheduler.Priority.HIGH;
+import static com.seevis.codereview.service.GitHubCallScheduler.Priority.LOW;
+import static com.seevis.codereview.service.GitHubCallScheduler.Priority.NORMAL;
 
 @Service
 @Slf4j
 public class WebhookService {
     
     @Autowired
-    private AIReviewService aiReviewService;
+    private ParallelReviewService parallelReviewService;
     
-    @Value("${github.app.id:}")
-    private String appId;
+    @Autowired
+    private ReviewedHeadTracker reviewedHeadTracker;
     
-    @Value("${github.app.private-key-path:}")
-    private String privateKeyPath;
+    @Autowired
+    private IncrementalChangeResolver incrementalChangeResolver;
     
-    @Value("${GITHUB_TOKEN:}")
-    private String githubToken;
+    @Autowired
+    private GitHubClientRegistry gitHubClientRegistry;
     
-    @Async
-    public void processCodeReview(String repoFullName, int prNumber, String installationId) {
-        log.info("🚀 Starting async code review for {} PR #{}", repoFullName, prNumber);
+    @Autowired
+    private ReviewJobJournal reviewJobJournal;
+    
+    @Autowired
+    private GitHubCallScheduler gitHubCallScheduler;
+    
+    @Autowired
+    private ReviewMetrics reviewMetrics;
+    
+    @Autowired
+    private ReviewPublisher reviewPublisher;
+    
+    @Autowired
+    private FileFilter fileFilter;
+    
+    @Autowired
+    private ChangedFileFetcher changedFileFetcher;
+    
+    /**
+     * Runs a full review of the PR on the calling thread. Webhook requests reach this through
+     * {@link ReviewJobScheduler}, which owns the worker threads and cancels the review through
+     * {@code cancellation} when a newer push supersedes it or the service shuts down.
+     * Each finished file is recorded in the {@link ReviewJobJournal}; files recorded for the same
+     * head before a restart are not sent to Gemini again. GitHub calls go through the
+     * {@link GitHubCallScheduler}; when the quota runs out the review is left unfinished and
+     * {@link GitHubRateLimitedException} is rethrown so the job can be deferred.
+     */
+    public void processCodeReview(String repoFullName, int prNumber, String installationId,
+                                  ReviewCancellation cancellation) throws GitHubRateLimitedException {
+        log.info("🚀 Starting code review for {} PR #{}", repoFullName, prNumber);
         
+        GHPullRequest pullRequest = null;
         try {
             // GitHub 연결 (App 인증 또는 PAT 사용)
             GitHub github = createGitHubClient(installationId);
             
             // Repository 가져오기
-            GHRepository repository = github.getRepository(repoFullName);
+            Timer.Sample stage = reviewMetrics.start();
+            GHRepository repository = gitHubCallScheduler.call(github, NORMAL, () -> github.getRepository(repoFullName));
             
             // Pull Request 가져오기
-            GHPullRequest pullRequest = repository.getPullRequest(prNumber);
+            GHPullRequest pr = gitHubCallScheduler.call(github, NORMAL, () -> repository.getPullRequest(prNumber));
+            pullRequest = pr;
+            reviewMetrics.stop(stage, ReviewMetrics.PR_FETCH);
             
             log.info("📋 PR Title: {}", pullRequest.getTitle());
             log.info("👤 Author: {}", pullRequest.getUser().getLogin());
             log.info("🔀 {} -> {}", pullRequest.getHead().getRef(), pullRequest.getBase().getRef());
             
+            // 이미 리뷰한 head인지 확인
+            String headSha = pullRequest.getHead().getSha();
+            Optional<String> previousHead = reviewedHeadTracker.lastReviewedHead(repoFullName, prNumber);
+            if (previousHead.isPresent() && previousHead.get().equals(headSha)) {
+                log.info("⏭️ Head {} of {} PR #{} was already reviewed", headSha, repoFullName, prNumber);
+                return;
+            }
+            
             // PR에 라벨 추가 (리뷰 중)
             try {
-                pullRequest.addLabels("ai-reviewing");
+                gitHubCallScheduler.run(github, LOW, () -> pr.addLabels("ai-reviewing"));
             } catch (Exception e) {
                 log.warn("Could not add label: {}", e.getMessage());
             }
             
-            // 변경된 파일 가져오기
-            List<GHPullRequestFileDetail> files = pullRequest.listFiles().toList();
-            log.info("📁 Files changed: {}", files.size());
+            // PR 제목/설명/브랜치는 모든 Gemini 요청이 공유하는 컨텍스트로 전달
+            com.seevis.codereview.model.PullRequest prContext = com.seevis.codereview.model.PullRequest.builder()
+                .number(prNumber)
+                .title(pullRequest.getTitle())
+                .description(pullRequest.getBody())
+                .baseBranch(pullRequest.getBase().getRef())
+                .headBranch(pullRequest.getHead().getRef())
+                .headSha(headSha)
+                .build();
+            
+            // 변경된 파일을 페이지 단위로 가져오기 (첫 페이지가 도착하면 바로 필터링/리뷰 시작)
+            // 라인 위치 매핑은 항상 PR 전체 diff 기준
+            List<com.seevis.codereview.model.CodeChange> prFiles = Collections.synchronizedList(new ArrayList<>());
+            Flux<List<com.seevis.codereview.model.CodeChange>> pages =
+                changedFileFetcher.pages(github, pr).doOnNext(prFiles::addAll);
+            
+            // 이전에 리뷰한 head가 있으면 그 이후 push된 변경분만 리뷰 (비교에는 전체 목록이 필요)
+            if (previousHead.isPresent()) {
+                List<com.seevis.codereview.model.CodeChange> allChanges =
+                    ChangedFileFetcher.await(pages.flatMapIterable(page -> page).collectList());
+                List<com.seevis.codereview.model.CodeChange> changes = gitHubCallScheduler.call(github, NORMAL,
+                        () -> incrementalChangeResolver.resolve(repository, allChanges, previousHead.get(), headSha))
+                    .orElse(allChanges);
+                pages = Flux.just(changes);
+            }
+            
+            // .gitattributes의 generated/binary 표시는 필터링 전에 한 번만 조회
+            GitAttributes attributes = GitAttributes.fetch(gitHubCallScheduler, github, repository, headSha);
             
-            int totalComments = 0;
+            if (cancellation.isCancelled()) {
+                log.info("⏹️ Review of {} PR #{} cancelled", repoFullName, prNumber);
+                return;
+            }
+            
+            // 페이지마다 리뷰 대상 파일 필터링, 재시작 전에 이미 리뷰한 파일은 저널에서 복원
+            String jobKey = repoFullName + "#" + prNumber;
+            List<com.seevis.codereview.model.CodeChange> filesToReview = Collections.synchronizedList(new ArrayList<>());
+            Map<com.seevis.codereview.model.CodeChange, com.seevis.codereview.model.FileReviewOutcome> reviewed =
+                Collections.synchronizedMap(new IdentityHashMap<>());
+            AtomicInteger resumed = new AtomicInteger();
+            Flux<List<com.seevis.codereview.model.CodeChange>> pending = pages.map(page -> {
+                Timer.Sample filterStage = reviewMetrics.start();
+                List<com.seevis.codereview.model.CodeChange> pageToReview = fileFilter.filter(page, attributes, null);
+                reviewMetrics.stop(filterStage, ReviewMetrics.FILTER);
+                filesToReview.addAll(pageToReview);
+                
+                List<com.seevis.codereview.model.CodeChange> pagePending = new ArrayList<>();
+                for (com.seevis.codereview.model.CodeChange codeChange : pageToReview) {
+                    Optional<com.seevis.codereview.model.ReviewResult> journaled =
+                        reviewJobJournal.reviewedFile(jobKey, headSha, codeChange);
+                    if (journaled.isPresent()) {
+                        reviewed.put(codeChange, com.seevis.codereview.model.FileReviewOutcome.builder()
+                            .change(codeChange).result(journaled.get()).build());
+                        resumed.incrementAndGet();
+                    } else {
+                        pagePending.add(codeChange);
+                    }
+                }
+                return pagePending;
+            });
+            
+            // AI 리뷰 병렬 실행 (완료된 파일은 즉시 저널에 기록, 취소되면 파일 목록 조회와 진행 중인 Gemini 호출 중단)
+            stage = reviewMetrics.start();
+            ChangedFileFetcher.await(parallelReviewService
+                .reviewFilesAsCompleted(prContext, pending, (change, issue) -> { })
+                .doOnNext(outcome -> {
+                    if (!outcome.isFailed()) {
+                        reviewJobJournal.recordFileReviewed(jobKey, headSha, outcome.getChange(), outcome.getResult());
+                    }
+                    reviewed.put(outcome.getChange(), outcome);
+                })
+                .takeUntilOther(cancellation.asMono())
+                .then());
+            reviewMetrics.stop(stage, ReviewMetrics.AI_REVIEW);
+            log.info("📁 Files changed: {}, reviewed: {}", prFiles.size(), filesToReview.size());
+            if (resumed.get() > 0) {
+                log.info("♻️ Resumed {} PR #{}: {} file(s) already reviewed", repoFullName, prNumber, resumed.get());
+            }
+            
+            if (cancellation.isCancelled()) {
+                log.info("⏹️ Review of {} PR #{} cancelled", repoFullName, prNumber);
+                return;
+            }
+            
+            List<com.seevis.codereview.model.FileReviewOutcome> outcomes = new ArrayList<>();
+            for (com.seevis.codereview.model.CodeChange codeChange : filesToReview) {
+                outcomes.add(reviewed.get(codeChange));
+            }
             
-            // 각 파일에 대해 리뷰 실행
-            for (GHPullRequestFileDetail file : files) {
-                // 파일 확장자 체크
-                if (!shouldReviewFile(file.getFilename())) {
-                    log.debug("Skipping file: {}", file.getFilename());
+            // 리뷰 결과를 하나의 PR 리뷰로 작성 (라인 코멘트 + 요약)
+            stage = reviewMetrics.start();
+            List<com.seevis.codereview.model.ReviewComment> comments = new ArrayList<>();
+            StringBuilder details = new StringBuilder();
+            int totalIssues = 0;
+            List<String> failedFiles = new ArrayList<>();
+            
+            for (com.seevis.codereview.model.FileReviewOutcome outcome : outcomes) {
+                com.seevis.codereview.model.CodeChange codeChange = outcome.getChange();
+                com.seevis.codereview.model.ReviewResult result = outcome.getResult();
+                if (outcome.isFailed()) {
+                    failedFiles.add(codeChange.getFileName());
+                    continue;
+                }
+                if (result == null || result.getIssues() == null || result.getIssues().isEmpty()) {
                     continue;
                 }
                 
-                log.info("🔍 Reviewing: {}", file.getFilename());
-                
-                // 코드 변경 사항 생성
-                com.seevis.codereview.model.CodeChange codeChange = 
-                    new com.seevis.codereview.model.CodeChange();
-                codeChange.setFileName(file.getFilename());
-                codeChange.setStatus(file.getStatus());
-                codeChange.setAdditions(file.getAdditions());
-                codeChange.setDeletions(file.getDeletions());
-                codeChange.setPatch(file.getPatch());
-                
-                // AI 리뷰 실행
-                com.seevis.codereview.model.ReviewResult result = 
-                    aiReviewService.reviewCode(codeChange);
+                details.append("### 🤖 `").append(codeChange.getFileName()).append("`\n\n");
+                if (result.getSummary() != null && !result.getSummary().isEmpty()) {
+                    details.append("**Summary:** ").append(result.getSummary()).append("\n\n");
+                }
                 
-                // 리뷰 결과를 PR 코멘트로 작성
-                if (result != null && result.getIssues() != null && !result.getIssues().isEmpty()) {
-                    StringBuilder comment = new StringBuilder();
-                    comment.append("## 🤖 AI Code Review for `").append(file.getFilename()).append("`\n\n");
-                    
-                    if (result.getSummary() != null && !result.getSummary().isEmpty()) {
-                        comment.append("**Summary:** ").append(result.getSummary()).append("\n\n");
-                    }
-                    
-                    comment.append("### Issues Found:\n\n");
-                    
-                    for (com.seevis.codereview.model.ReviewIssue issue : result.getIssues()) {
-                        // 심각도에 따른 이모지
-                        String emoji = "ℹ️";
-                        if ("error".equals(issue.getSeverity())) {
-                            emoji = "🔴";
-                        } else if ("warning".equals(issue.getSeverity())) {
-                            emoji = "🟡";
-                        }
-                        
-                        comment.append(emoji).append(" **").append(issue.getType().toUpperCase())
-                               .append("** ");
-                        
-                        if (issue.getLine() != null) {
-                            comment.append("(Line ").append(issue.getLine()).append(")");
-                        }
-                        
-                        comment.append("\n");
-                        comment.append("- **Issue:** ").append(issue.getMessage()).append("\n");
-                        
-                        if (issue.getSuggestion() != null && !issue.getSuggestion().isEmpty()) {
-                            comment.append("- **Suggestion:** ").append(issue.getSuggestion()).append("\n");
-                        }
-                        
-                        comment.append("\n");
+                for (com.seevis.codereview.model.ReviewIssue issue : result.getIssues()) {
+                    String text = formatIssue(issue);
+                    if (issue.getLine() != null) {
+                        // 라인이 있는 이슈는 해당 라인에 코멘트
+                        comments.add(com.seevis.codereview.model.ReviewComment.builder()
+                            .path(codeChange.getFileName())
+                            .line(issue.getLine())
+                            .body(text)
+                            .severity(issue.getSeverity())
+                            .build());
+                    } else {
+                        details.append(text).append("\n");
                     }
-                    
-                    // 긍정적인 피드백 추가
-                    if (result.getPositives() != null && !result.getPositives().isEmpty()) {
-                        comment.append("### ✅ Good Practices:\n");
-                        for (String positive : result.getPositives()) {
-                            comment.append("- ").append(positive).append("\n");
-                        }
+                    totalIssues++;
+                }
+                
+                // 긍정적인 피드백 추가
+                if (result.getPositives() != null && !result.getPositives().isEmpty()) {
+                    details.append("**✅ Good Practices:**\n");
+                    for (String positive : result.getPositives()) {
+                        details.append("- ").append(positive).append("\n");
                     }
-                    
-                    // PR에 코멘트 작성
-                    pullRequest.comment(comment.toString());
-                    totalComments++;
-                    
-                    log.info("📝 Posted review comment for {}", file.getFilename());
+                    details.append("\n");
                 }
             }
             
+            StringBuilder body = new StringBuilder(failedFiles.isEmpty()
+                ? "## ✅ Code Review Complete!\n\n" : "## ⚠️ Code Review Complete (some files failed)\n\n");
+            int reviewedFiles = filesToReview.size() - failedFiles.size();
+            if (totalIssues > 0) {
+                body.append(String.format("I've reviewed **%d file(s)** and found **%d issue(s)**.\n\n" +
+                    "Please review the feedback and make necessary improvements.\n\n", reviewedFiles, totalIssues));
+                body.append(details);
+            } else if (reviewedFiles > 0) {
+                body.append("No significant issues found. Good job! 👍\n\n");
+            }
+            // 리뷰하지 못한 파일(예: Gemini 회로 차단)은 성공으로 보이지 않도록 따로 표시
+            if (!failedFiles.isEmpty()) {
+                body.append(String.format("⚠️ **%d file(s) could not be reviewed:** `%s`\n\n",
+                    failedFiles.size(), String.join("`, `", failedFiles)));
+            }
+            body.append("_Powered by AI Code Reviewer with Google Gemini_ 🤖");
+            
+            reviewPublisher.publish(github, pr, headSha, prFiles, body.toString(), comments);
+            
             // 라벨 업데이트 (리뷰 완료)
             try {
-                pullRequest.removeLabel("ai-reviewing");
-                pullRequest.addLabels("ai-reviewed");
+                gitHubCallScheduler.run(github, LOW, () -> pr.removeLabel("ai-reviewing"));
+                gitHubCallScheduler.run(github, LOW, () -> pr.addLabels("ai-reviewed"));
             } catch (Exception e) {
                 log.warn("Could not update labels: {}", e.getMessage());
             }
+            reviewMetrics.stop(stage, ReviewMetrics.POST_REVIEW);
             
-            // 전체 리뷰 요약 코멘트
-            if (totalComments > 0) {
-                String summary = String.format(
-                    "## ✅ Code Review Complete!\n\n" +
-                    "I've reviewed **%d file(s)** and left **%d comment(s)**.\n\n" +
-                    "Please review the feedback and make necessary improvements.\n\n" +
-                    "_Powered by AI Code Reviewer with Google Gemini_ 🤖",
-                    files.size(), totalComments
-                );
-                pullRequest.comment(summary);
-            } else {
-                pullRequest.comment(
-                    "## ✅ Code Review Complete!\n\n" +
-                    "No significant issues found. Good job! 👍\n\n" +
-                    "_Powered by AI Code Reviewer with Google Gemini_ 🤖"
-                );
-            }
+            reviewedHeadTracker.markReviewed(repoFullName, prNumber, headSha);
             
             log.info("✅ Code review completed for {} PR #{}", repoFullName, prNumber);
             
+        } catch (GitHubRateLimitedException e) {
+            // 쿼터 소진: 실패 처리하지 않고 스케줄러가 리셋 이후로 연기
+            log.warn("🚦 {} PR #{}: {}", repoFullName, prNumber, e.getMessage());
+            throw e;
         } catch (Exception e) {
             log.error("❌ Error during code review for {} PR #{}", repoFullName, prNumber, e);
             
-            // 에러 발생 시 PR에 코멘트 남기기
+            // 에러 발생 시 PR에 코멘트 남기기 (결과 게시와 같은 HIGH 우선순위로 스케줄러 경유)
             try {
                 GitHub github = createGitHubClient(installationId);
-                GHRepository repository = github.getRepository(repoFullName);
-                GHPullRequest pullRequest = repository.getPullRequest(prNumber);
                 
-                pullRequest.comment(
+                // 이미 가져온 PR 핸들이 있으면 재사용
+                if (pullRequest == null) {
+                    pullRequest = gitHubCallScheduler.call(github, HIGH, () -> github
+                        .getRepository(repoFullName)
+                        .getPullRequest(prNumber));
+                }
+                GHPullRequest failedPr = pullRequest;
+                
+                gitHubCallScheduler.run(github, HIGH, () -> failedPr.comment(
                     "## ❌ Code Review Failed\n\n" +
                     "An error occurred during the code review process.\n" +
                     "Error: " + e.getMessage() + "\n\n" +
                     "Please try again or contact the administrator."
-                );
+                ));
                 
                 // 라벨 정리
                 try {
-                    pullRequest.removeLabel("ai-reviewing");
-                    pullRequest.addLabels("ai-review-failed");
+                    gitHubCallScheduler.run(github, HIGH, () -> failedPr.removeLabel("ai-reviewing"));
+                    gitHubCallScheduler.run(github, HIGH, () -> failedPr.addLabels("ai-review-failed"));
                 } catch (Exception labelError) {
                     log.warn("Could not update labels: {}", labelError.getMessage());
                 }
@@ -194,71 +311,27 @@ public class WebhookService {
     }
     
     private GitHub createGitHubClient(String installationId) throws IOException {
-        // GitHub App 인증 사용 (privateKey가 있는 경우)
-        if (appId != null && !appId.isEmpty() && 
-            privateKeyPath != null && !privateKeyPath.isEmpty() && 
-            installationId != null && !installationId.isEmpty()) {
-            
-            try {
-                log.info("🔐 Using GitHub App authentication");
-                
-                // Private key 읽기
-                File privateKeyFile = new File(privateKeyPath);
-                String privateKey = Files.readString(privateKeyFile.toPath());
-                
-                // GitHub App으로 인증
-                GHAppInstallationToken token = GitHub.connectUsingOAuth(appId)
-                    .getApp()
-                    .getInstallationById(Long.parseLong(installationId))
-                    .createToken()
-                    .create();
-                
-                return GitHub.connectUsingOAuth(token.getToken());
-                
-            } catch (Exception e) {
-                log.warn("GitHub App authentication failed, falling back to PAT: {}", e.getMessage());
-            }
-        }
-        
-        // Personal Access Token 사용 (fallback)
-        if (githubToken != null && !githubToken.isEmpty()) {
-            log.info("🔑 Using Personal Access Token authentication");
-            return GitHub.connectUsingOAuth(githubToken);
-        }
-        
-        // 인증 정보가 없는 경우
-        throw new IOException("No GitHub authentication configured. " +
-            "Please set either GitHub App credentials or GITHUB_TOKEN");
+        // GitHub App 인증 사용 (설치별 토큰은 캐시되어 만료 직전에만 재발급), 없으면 PAT 사용
+        return gitHubClientRegistry.forInstallation(installationId);
     }
     
-    private boolean shouldReviewFile(String filename) {
-        // 리뷰할 파일 확장자 목록
-        String[] extensions = {
-            ".java", ".kt", ".js", ".ts", ".jsx", ".tsx",
-            ".py", ".go", ".rs", ".cpp", ".c", ".cs",
-            ".rb", ".php", ".swift", ".scala"
-        };
-        
-        String lowerFilename = filename.toLowerCase();
-        
-        // 제외할 패턴
-        if (lowerFilename.contains("/test/") || 
-            lowerFilename.contains("/tests/") ||
-            lowerFilename.contains(".min.") ||
-            lowerFilename.contains("/node_modules/") ||
-            lowerFilename.contains("/vendor/") ||
-            lowerFilename.contains("/build/") ||
-            lowerFilename.contains("/dist/")) {
-            return false;
+    private String formatIssue(com.seevis.codereview.model.ReviewIssue issue) {
+        // 심각도에 따른 이모지
+        String emoji = "ℹ️";
+        if ("error".equals(issue.getSeverity())) {
+            emoji = "🔴";
+        } else if ("warning".equals(issue.getSeverity())) {
+            emoji = "🟡";
         }
         
-        // 확장자 체크
-        for (String ext : extensions) {
-            if (lowerFilename.endsWith(ext)) {
-                return true;
-            }
+        StringBuilder text = new StringBuilder();
+        text.append(emoji).append(" **").append(issue.getType() != null ? issue.getType().toUpperCase() : "ISSUE")
+            .append("**\n");
+        text.append("- **Issue:** ").append(issue.getMessage()).append("\n");
+        if (issue.getSuggestion() != null && !issue.getSuggestion().isEmpty()) {
+            text.append("- **Suggestion:** ").append(issue.getSuggestion()).append("\n");
         }
-        
-        return false;
+        return text.toString();
     }
+    
 }
\ No newline at end of file
@@ -0,0 +1,117 @@
+package com.seevis.codereview.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DiffIndexTest {
+    
+    // Diff positions are counted from the first hunk header (position 0), later headers included
+    private static final String TWO_HUNKS = String.join("\n",
+        "@@ -1,4 +1,5 @@",                 // 0
+        " line1",                          // 1  new 1
+        "-old2",                           // 2
+        "+new2",                           // 3  new 2
+        "+new3",                           // 4  new 3
+        " line3",                          // 5  new 4
+        " line4",                          // 6  new 5
+        "@@ -20,3 +21,4 @@ class Foo {",  // 7
+        " a",                              // 8  new 21
+        " b",                              // 9  new 22
+        "-c",                              // 10
+        "\\ No newline at end of file",    // 11
+        "+c",                              // 12 new 23
+        "+d",                              // 13 new 24
+        "\\ No newline at end of file");   // 14
+    
+    @Test
+    void readsHunkRangesFromHeadersAndRows() {
+        DiffIndex diff = DiffIndex.parse(TWO_HUNKS);
+        
+        assertThat(diff.hunkCount()).isEqualTo(2);
+        assertThat(diff.oldStart(0)).isEqualTo(1);
+        assertThat(diff.oldLines(0)).isEqualTo(4);
+        assertThat(diff.newStart(0)).isEqualTo(1);
+        assertThat(diff.newLines(0)).isEqualTo(5);
+        assertThat(diff.oldStart(1)).isEqualTo(20);
+        assertThat(diff.oldLines(1)).isEqualTo(3);
+        assertThat(diff.newStart(1)).isEqualTo(21);
+        assertThat(diff.newLines(1)).isEqualTo(4);
+        assertThat(diff.addedLineCount()).isEqualTo(4);
+    }
+    
+    @Test
+    void positionsContinueAcrossHunkHeaders() {
+        DiffIndex diff = DiffIndex.parse(TWO_HUNKS);
+        
+        assertThat(diff.position(1)).isEqualTo(1);
+        assertThat(diff.position(2)).isEqualTo(3);
+        assertThat(diff.position(3)).isEqualTo(4);
+        assertThat(diff.position(5)).isEqualTo(6);
+        assertThat(diff.position(21)).isEqualTo(8);
+        assertThat(diff.position(22)).isEqualTo(9);
+    }
+    
+    @Test
+    void noNewlineMarkersTakeAPositionButNoLine() {
+        DiffIndex diff = DiffIndex.parse(TWO_HUNKS);
+        
+        assertThat(diff.position(23)).isEqualTo(12);
+        assertThat(diff.position(24)).isEqualTo(13);
+        assertThat(diff.isCommentable(25)).isFalse();
+    }
+    
+    @Test
+    void onlyAddedAndContextLinesAreCommentable() {
+        DiffIndex diff = DiffIndex.parse(TWO_HUNKS);
+        
+        assertThat(diff.isCommentable(1)).isTrue();
+        assertThat(diff.isCommentable(5)).isTrue();
+        assertThat(diff.isCommentable(0)).isFalse();
+        assertThat(diff.isCommentable(6)).isFalse();
+        assertThat(diff.isCommentable(20)).isFalse();
+        assertThat(diff.position(6)).isEqualTo(-1);
+        
+        assertThat(diff.isAdded(1)).isFalse();
+        assertThat(diff.isAdded(2)).isTrue();
+        assertThat(diff.isAdded(22)).isFalse();
+        assertThat(diff.isAdded(24)).isTrue();
+    }
+    
+    @Test
+    void deletionOnlyHunkKeepsItsContextLines() {
+        DiffIndex diff = DiffIndex.parse(String.join("\n",
+            "@@ -10,5 +10,3 @@",
+            " a",
+            "-b",
+            "-c",
+            " d",
+            " e"));
+        
+        assertThat(diff.newLines(0)).isEqualTo(3);
+        assertThat(diff.oldLines(0)).isEqualTo(5);
+        assertThat(diff.addedLineCount()).isZero();
+        assertThat(diff.position(10)).isEqualTo(1);
+        assertThat(diff.position(11)).isEqualTo(4);
+        assertThat(diff.position(12)).isEqualTo(5);
+        assertThat(diff.isCommentable(13)).isFalse();
+        assertThat(diff.isAdded(11)).isFalse();
+    }
+    
+    @Test
+    void deletedFileHasNoCommentableLines() {
+        DiffIndex diff = DiffIndex.parse("@@ -1,2 +0,0 @@\n-a\n-b");
+        
+        assertThat(diff.hunkCount()).isEqualTo(1);
+        assertThat(diff.newLines(0)).isZero();
+        assertThat(diff.isCommentable(0)).isFalse();
+        assertThat(diff.isCommentable(1)).isFalse();
+        assertThat(diff.position(1)).isEqualTo(-1);
+    }
+    
+    @Test
+    void emptyPatchHasNoHunks() {
+        assertThat(DiffIndex.parse(null).hunkCount()).isZero();
+        assertThat(DiffIndex.parse("").isCommentable(1)).isFalse();
+    }
+}
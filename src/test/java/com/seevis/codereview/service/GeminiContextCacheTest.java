@@ -0,0 +1,96 @@
+package com.seevis.codereview.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class GeminiContextCacheTest {
+    
+    private static final String MODEL = "gemini-1.5-flash";
+    
+    private final AtomicInteger uploads = new AtomicInteger();
+    private GeminiContextCache cache;
+    
+    @BeforeEach
+    void setUp() {
+        WebClient webClient = WebClient.builder()
+            .exchangeFunction(request -> {
+                uploads.incrementAndGet();
+                return Mono.just(ClientResponse.create(HttpStatus.OK)
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .body("{\"name\":\"cachedContents/abc123\"}")
+                    .build());
+            })
+            .build();
+        GeminiRateLimiter rateLimiter = mock(GeminiRateLimiter.class);
+        when(rateLimiter.execute(anyString(), anyString(), any()))
+            .thenAnswer(invocation -> invocation.<Supplier<Mono<?>>>getArgument(2).get());
+        
+        cache = new GeminiContextCache();
+        ReflectionTestUtils.setField(cache, "geminiWebClient", webClient);
+        ReflectionTestUtils.setField(cache, "geminiRateLimiter", rateLimiter);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "minTokens", 0);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 900L);
+    }
+    
+    @Test
+    void sendsContextBelowTheModelMinimumInlineWithoutUploading() {
+        // Instructions plus a long PR description, still below the 1.5 models' 32,768 tokens
+        String context = context(5_000);
+        
+        assertThat(cache.lookup(MODEL, "key", context).block()).isEmpty();
+        assertThat(uploads).hasValue(0);
+    }
+    
+    @Test
+    void cachesContextAboveTheModelMinimumOnce() {
+        String context = context(33_000);
+        
+        Optional<String> first = cache.lookup(MODEL, "key", context).block();
+        Optional<String> second = cache.lookup(MODEL, "key", context).block();
+        
+        assertThat(first).contains("cachedContents/abc123");
+        assertThat(second).isEqualTo(first);
+        assertThat(uploads).hasValue(1);
+    }
+    
+    @Test
+    void configuredMinimumOverridesTheModelDefault() {
+        ReflectionTestUtils.setField(cache, "minTokens", 1_000);
+        
+        assertThat(cache.lookup(MODEL, "key", context(2_000)).block()).contains("cachedContents/abc123");
+        assertThat(cache.lookup(MODEL, "key", context(500)).block()).isEmpty();
+        assertThat(uploads).hasValue(1);
+    }
+    
+    @Test
+    void derivesTheMinimumFromTheModel() {
+        assertThat(GeminiContextCache.minimumTokensFor("gemini-1.5-flash")).isEqualTo(32_768);
+        assertThat(GeminiContextCache.minimumTokensFor("gemini-1.5-pro")).isEqualTo(32_768);
+        assertThat(GeminiContextCache.minimumTokensFor("gemini-2.5-flash")).isEqualTo(1_024);
+        assertThat(GeminiContextCache.minimumTokensFor("gemini-2.5-pro")).isEqualTo(4_096);
+        assertThat(GeminiContextCache.minimumTokensFor("some-future-model")).isEqualTo(32_768);
+    }
+    
+    // Text of about {@code tokens} estimated tokens
+    private static String context(int tokens) {
+        return "x".repeat(tokens * 4);
+    }
+}
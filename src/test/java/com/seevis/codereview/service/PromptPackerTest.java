@@ -0,0 +1,95 @@
+package com.seevis.codereview.service;
+
+import com.seevis.codereview.model.CodeChange;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PromptPackerTest {
+    
+    @Test
+    void splitsBetweenHunksThatDoNotFitTogether() {
+        String first = hunk(1, 20);
+        String second = hunk(100, 20);
+        String third = hunk(200, 20);
+        // Room for two hunks but not three
+        int budget = PromptPacker.estimateTokens(first + second) + 1;
+        
+        List<String> chunks = PromptPacker.splitAtHunks(first + second + third, budget);
+        
+        assertThat(chunks).containsExactly(first + second, third);
+    }
+    
+    @Test
+    void keepsAPatchThatFitsInOnePiece() {
+        String patch = hunk(1, 5) + hunk(50, 5);
+        
+        assertThat(PromptPacker.splitAtHunks(patch, PromptPacker.estimateTokens(patch)))
+            .containsExactly(patch);
+    }
+    
+    @Test
+    void cutsAnOversizedHunkAtLineBoundaries() {
+        String small = hunk(1, 2);
+        String large = hunk(100, 200);
+        int budget = 200;
+        
+        List<String> chunks = PromptPacker.splitAtHunks(small + large, budget);
+        
+        assertThat(chunks).hasSizeGreaterThan(2);
+        assertThat(chunks.get(0)).isEqualTo(small);
+        assertThat(chunks.get(1)).startsWith("@@ -100,");
+        assertThat(String.join("", chunks)).isEqualTo(small + large);
+        for (String chunk : chunks) {
+            assertThat(chunk.length()).isLessThanOrEqualTo(budget * 4);
+            assertThat(chunk).endsWith("\n");
+        }
+    }
+    
+    @Test
+    void numbersThePiecesOfASplitFile() {
+        PromptPacker packer = packer(PromptPacker.PREAMBLE_TOKENS + 300);
+        // Each hunk fits the 300 token patch budget, two together do not
+        String patch = hunk(1, 30) + hunk(100, 30) + hunk(200, 30);
+        List<CodeChange> changes = List.of(change("Small.java", hunk(1, 2)), change("Large.java", patch));
+        
+        List<PromptPacker.Batch> batches = packer.pack(changes);
+        
+        List<PromptPacker.Part> pieces = batches.stream()
+            .flatMap(batch -> batch.parts().stream())
+            .filter(part -> part.fileIndex() == 1)
+            .toList();
+        assertThat(pieces).hasSize(3);
+        for (int i = 0; i < pieces.size(); i++) {
+            assertThat(pieces.get(i).chunk()).isEqualTo(i + 1);
+            assertThat(pieces.get(i).chunks()).isEqualTo(3);
+            assertThat(pieces.get(i).patch()).startsWith("@@ ");
+        }
+        assertThat(batches).allSatisfy(batch -> assertThat(batch.parts()).hasSize(1));
+    }
+    
+    private static PromptPacker packer(int inputTokenBudget) {
+        PromptPacker packer = new PromptPacker();
+        ReflectionTestUtils.setField(packer, "inputTokenBudget", inputTokenBudget);
+        ReflectionTestUtils.setField(packer, "smallFileTokens", 50);
+        ReflectionTestUtils.setField(packer, "maxFilesPerBatch", 8);
+        return packer;
+    }
+    
+    private static CodeChange change(String fileName, String patch) {
+        return CodeChange.builder().fileName(fileName).status("modified").patch(patch).build();
+    }
+    
+    // A hunk of {@code lines} added lines starting at {@code start}
+    private static String hunk(int start, int lines) {
+        StringBuilder hunk = new StringBuilder()
+            .append("@@ -").append(start).append(",0 +").append(start).append(',').append(lines).append(" @@\n");
+        for (int i = 0; i < lines; i++) {
+            hunk.append("+    int value").append(start + i).append(" = compute(").append(i).append(");\n");
+        }
+        return hunk.toString();
+    }
+}
@@ -0,0 +1,144 @@
+package com.seevis.codereview.service;
+
+import com.seevis.codereview.model.CodeChange;
+import com.seevis.codereview.model.ReviewComment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GHPullRequest;
+import org.kohsuke.github.GHPullRequestReviewBuilder;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.HttpException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReviewPublisherTest {
+    
+    // Every file's line 2 is an added line at diff position 2
+    private static final String PATCH = "@@ -1,2 +1,3 @@\n a\n+b\n c";
+    
+    private final GitHub github = mock(GitHub.class);
+    private final GHPullRequest pr = mock(GHPullRequest.class);
+    private final List<Submission> submissions = new ArrayList<>();
+    private Set<String> rejectedPaths = Set.of();
+    private int failureCode = 422;
+    private ReviewPublisher publisher;
+    
+    @BeforeEach
+    void setUp() throws IOException {
+        GitHubCallScheduler scheduler = mock(GitHubCallScheduler.class);
+        when(scheduler.call(any(), any(), any()))
+            .thenAnswer(invocation -> invocation.<GitHubCallScheduler.GitHubCall<?>>getArgument(2).call());
+        when(pr.createReview()).thenAnswer(invocation -> review());
+        
+        publisher = new ReviewPublisher();
+        ReflectionTestUtils.setField(publisher, "gitHubCallScheduler", scheduler);
+        ReflectionTestUtils.setField(publisher, "maxCommentsPerRequest", 50);
+    }
+    
+    @Test
+    void postsAllCommentsInOneReview() throws IOException {
+        int reviews = publisher.publish(github, pr, "head", files("A.java", "B.java"), "Summary",
+            List.of(comment("A.java", 2), comment("B.java", 2)));
+        
+        assertThat(reviews).isEqualTo(1);
+        assertThat(submissions).hasSize(1);
+        assertThat(submissions.get(0).paths()).containsExactly("A.java", "B.java");
+        assertThat(submissions.get(0).body()).isEqualTo("Summary");
+    }
+    
+    @Test
+    void bisectsARejectedReviewUntilTheOffendingCommentIsIsolated() throws IOException {
+        rejectedPaths = Set.of("Bad.java");
+        
+        int reviews = publisher.publish(github, pr, "head", files("A.java", "B.java", "Bad.java", "C.java", "D.java"),
+            "Summary", List.of(comment("A.java", 2), comment("B.java", 2), comment("Bad.java", 2),
+                comment("C.java", 2), comment("D.java", 2)));
+        
+        // [A B Bad C D] -> [A B] + [Bad C D] -> [Bad] + [C D]; Bad is moved into its review's body
+        assertThat(reviews).isEqualTo(3);
+        assertThat(submissions).extracting(Submission::paths)
+            .containsExactly(List.of("A.java", "B.java"), List.of(), List.of("C.java", "D.java"));
+        assertThat(submissions.get(0).body()).isEqualTo("Summary");
+        assertThat(submissions.get(1).body())
+            .contains("Comments outside the diff")
+            .contains("`Bad.java` (line 2)")
+            .contains("Comment on Bad.java");
+    }
+    
+    @Test
+    void movesCommentsOutsideTheDiffIntoTheBodyWithoutARetry() throws IOException {
+        int reviews = publisher.publish(github, pr, "head", files("A.java"), "Summary",
+            List.of(comment("A.java", 2), comment("A.java", 40), comment("Other.java", 1)));
+        
+        assertThat(reviews).isEqualTo(1);
+        assertThat(submissions).hasSize(1);
+        assertThat(submissions.get(0).paths()).containsExactly("A.java");
+        assertThat(submissions.get(0).body())
+            .startsWith("Summary")
+            .contains("`A.java` (line 40)")
+            .contains("`Other.java` (line 1)");
+    }
+    
+    @Test
+    void rethrowsErrorsOtherThanValidationFailures() {
+        rejectedPaths = Set.of("A.java");
+        failureCode = 502;
+        
+        assertThatThrownBy(() -> publisher.publish(github, pr, "head", files("A.java", "B.java"), "Summary",
+            List.of(comment("A.java", 2), comment("B.java", 2))))
+            .isInstanceOf(HttpException.class);
+        assertThat(submissions).isEmpty();
+    }
+    
+    // A review builder whose create() fails like GitHub when it carries a rejected comment
+    private GHPullRequestReviewBuilder review() throws IOException {
+        GHPullRequestReviewBuilder builder = mock(GHPullRequestReviewBuilder.class, RETURNS_SELF);
+        StringBuilder body = new StringBuilder();
+        List<String> paths = new ArrayList<>();
+        when(builder.body(anyString())).thenAnswer(invocation -> {
+            body.append(invocation.<String>getArgument(0));
+            return builder;
+        });
+        when(builder.comment(anyString(), anyString(), anyInt())).thenAnswer(invocation -> {
+            paths.add(invocation.getArgument(1));
+            return builder;
+        });
+        when(builder.create()).thenAnswer(invocation -> {
+            if (paths.stream().anyMatch(rejectedPaths::contains)) {
+                throw new HttpException("Unprocessable Entity", failureCode, "Unprocessable Entity",
+                    "https://api.github.com/repos/o/r/pulls/1/reviews");
+            }
+            submissions.add(new Submission(body.toString(), List.copyOf(paths)));
+            return null;
+        });
+        return builder;
+    }
+    
+    private static List<CodeChange> files(String... fileNames) {
+        List<CodeChange> files = new ArrayList<>();
+        for (String fileName : fileNames) {
+            files.add(CodeChange.builder().fileName(fileName).status("modified").patch(PATCH).build());
+        }
+        return files;
+    }
+    
+    private static ReviewComment comment(String path, int line) {
+        return ReviewComment.builder().path(path).line(line).body("Comment on " + path).severity("warning").build();
+    }
+    
+    private record Submission(String body, List<String> paths) {
+    }
+}
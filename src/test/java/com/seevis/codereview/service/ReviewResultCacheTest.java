@@ -0,0 +1,83 @@
+package com.seevis.codereview.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReviewResultCacheTest {
+    
+    @TempDir
+    Path directory;
+    
+    private ReviewResultCache cache;
+    
+    @BeforeEach
+    void setUp() {
+        cache = new ReviewResultCache();
+        ReflectionTestUtils.setField(cache, "diskDirectory", directory);
+        ReflectionTestUtils.setField(cache, "ttl", Duration.ofHours(1));
+        ReflectionTestUtils.setField(cache, "diskMaxEntries", 100);
+        ReflectionTestUtils.setField(cache, "diskMaxSizeMb", 1L);
+    }
+    
+    @Test
+    void removesExpiredEntriesAndLeftoverTempFiles() throws IOException {
+        entry("fresh.json", 10, 100);
+        entry("expired.json", 120, 100);
+        entry("abandoned123.tmp", 5, 100);
+        entry("notes.txt", 120, 100);
+        
+        cache.sweepDisk();
+        
+        assertThat(files()).containsExactlyInAnyOrder("fresh.json", "notes.txt");
+    }
+    
+    @Test
+    void evictsTheOldestEntriesBeyondTheEntryLimit() throws IOException {
+        ReflectionTestUtils.setField(cache, "diskMaxEntries", 2);
+        entry("a.json", 30, 100);
+        entry("b.json", 10, 100);
+        entry("c.json", 20, 100);
+        entry("d.json", 40, 100);
+        
+        cache.sweepDisk();
+        
+        assertThat(files()).containsExactlyInAnyOrder("b.json", "c.json");
+    }
+    
+    @Test
+    void evictsTheOldestEntriesBeyondTheSizeLimit() throws IOException {
+        // 1 MB holds two of these but not three
+        entry("old.json", 30, 400_000);
+        entry("middle.json", 20, 400_000);
+        entry("new.json", 10, 400_000);
+        
+        cache.sweepDisk();
+        
+        assertThat(files()).containsExactlyInAnyOrder("middle.json", "new.json");
+    }
+    
+    // A file of {@code bytes} bytes last modified {@code minutesAgo} minutes ago
+    private void entry(String name, int minutesAgo, int bytes) throws IOException {
+        Path file = Files.write(directory.resolve(name), new byte[bytes]);
+        Files.setLastModifiedTime(file,
+            FileTime.fromMillis(System.currentTimeMillis() - Duration.ofMinutes(minutesAgo).toMillis()));
+    }
+    
+    private List<String> files() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).toList();
+        }
+    }
+}
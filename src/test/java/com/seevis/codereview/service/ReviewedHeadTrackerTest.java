@@ -0,0 +1,94 @@
+package com.seevis.codereview.service;
+
+import com.seevis.codereview.model.ReviewJob;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReviewedHeadTrackerTest {
+    
+    @TempDir
+    Path directory;
+    
+    private final List<ReviewJobJournal> journals = new ArrayList<>();
+    
+    @AfterEach
+    void closeJournals() {
+        journals.forEach(ReviewJobJournal::close);
+    }
+    
+    @Test
+    void restoresReviewedHeadsAfterARestart() throws IOException {
+        ReviewedHeadTracker tracker = tracker(journal(10_000));
+        tracker.markReviewed("o/r", 1, "a");
+        tracker.markReviewed("o/r", 1, "b");
+        tracker.markReviewed("o/r", 2, "c");
+        tracker.markReviewed("o/r", 3, "d");
+        tracker.forget("o/r", 3);
+        
+        ReviewedHeadTracker restarted = tracker(journal(10_000));
+        
+        assertThat(restarted.lastReviewedHead("o/r", 1)).contains("b");
+        assertThat(restarted.lastReviewedHead("o/r", 2)).contains("c");
+        assertThat(restarted.lastReviewedHead("o/r", 3)).isEmpty();
+    }
+    
+    @Test
+    void keepsReviewedHeadsWhenNoJobIsOpenAndAcrossCompaction() throws IOException {
+        ReviewJobJournal journal = journal(10_000);
+        ReviewedHeadTracker tracker = tracker(journal);
+        tracker.markReviewed("o/r", 1, "a");
+        // Enough finished jobs to outgrow the 1 KB compaction threshold several times
+        for (int i = 0; i < 50; i++) {
+            ReviewJob job = ReviewJob.builder().repository("o/r").prNumber(100 + i).headSha("h" + i).build();
+            journal.recordQueued(job);
+            journal.recordFinished(job);
+        }
+        
+        ReviewedHeadTracker restarted = tracker(journal(10_000));
+        
+        assertThat(restarted.lastReviewedHead("o/r", 1)).contains("a");
+    }
+    
+    @Test
+    void dropsTheLeastRecentlyReviewedHeadsBeyondTheLimit() throws IOException {
+        ReviewedHeadTracker tracker = tracker(journal(2));
+        tracker.markReviewed("o/r", 1, "a");
+        tracker.markReviewed("o/r", 2, "b");
+        tracker.markReviewed("o/r", 1, "c");
+        tracker.markReviewed("o/r", 3, "d");
+        
+        ReviewedHeadTracker restarted = tracker(journal(2));
+        
+        assertThat(restarted.lastReviewedHead("o/r", 1)).contains("c");
+        assertThat(restarted.lastReviewedHead("o/r", 2)).isEmpty();
+        assertThat(restarted.lastReviewedHead("o/r", 3)).contains("d");
+    }
+    
+    // A journal over the same file, as after a restart
+    private ReviewJobJournal journal(int maxReviewedHeads) throws IOException {
+        journals.forEach(ReviewJobJournal::close);
+        ReviewJobJournal journal = new ReviewJobJournal();
+        ReflectionTestUtils.setField(journal, "journalPath", directory.resolve("journal.jsonl").toString());
+        ReflectionTestUtils.setField(journal, "compactSizeKb", 1L);
+        ReflectionTestUtils.setField(journal, "maxReviewedHeads", maxReviewedHeads);
+        journal.initialize();
+        journals.add(journal);
+        return journal;
+    }
+    
+    private static ReviewedHeadTracker tracker(ReviewJobJournal journal) {
+        ReviewedHeadTracker tracker = new ReviewedHeadTracker();
+        ReflectionTestUtils.setField(tracker, "reviewJobJournal", journal);
+        tracker.initialize();
+        return tracker;
+    }
+}